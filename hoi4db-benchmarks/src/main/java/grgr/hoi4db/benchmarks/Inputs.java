@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Data parsed by the benchmarks. {@code samples} are the files used in {@code hoi4db-data} tests,
+ * {@code synthetic} is generated file with game-like equipment definitions and history entries of
+ * given size. Data is available as bytes, as String and as files in temporary directory.
+ */
+@State(Scope.Benchmark)
+public class Inputs {
+
+    static final String[] SAMPLES = new String[] {
+            "arrays", "duplicates", "lists", "noroot", "objectinarray", "operators", "scopes", "values", "whitespace"
+    };
+
+    @Param({ "samples", "synthetic" })
+    public String input;
+
+    /** Size of synthetic input */
+    @Param({ "4" })
+    public int megabytes;
+
+    public List<byte[]> bytes = new ArrayList<>();
+    public List<String> texts = new ArrayList<>();
+
+    public File dir;
+    public String[] fileNames;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if ("samples".equals(input)) {
+            for (String sample : SAMPLES) {
+                bytes.add(sample(sample));
+            }
+        } else {
+            bytes.add(synthetic(megabytes << 20));
+        }
+        dir = Files.createTempDirectory("hoi4db-benchmarks").toFile();
+        fileNames = new String[bytes.size()];
+        for (int i = 0; i < bytes.size(); i++) {
+            texts.add(new String(bytes.get(i), StandardCharsets.UTF_8));
+            fileNames[i] = input + "-" + i + ".txt";
+            Files.write(new File(dir, fileNames[i]).toPath(), bytes.get(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (String fileName : fileNames) {
+            new File(dir, fileName).delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Total size of the data in bytes
+     * @return
+     */
+    public long size() {
+        return bytes.stream().mapToLong(b -> b.length).sum();
+    }
+
+    static byte[] sample(String name) throws IOException {
+        try (InputStream is = Inputs.class.getResourceAsStream("/samples/" + name + ".txt")) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = is.read(buf)) > 0) {
+                baos.write(buf, 0, read);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * Generates (always the same) game-like data of at least {@code size} bytes.
+     * @param size
+     * @return
+     */
+    static byte[] synthetic(int size) {
+        Random random = new Random(42L);
+        StringBuilder sb = new StringBuilder(size + 4096);
+        String[] categories = { "ship_light_battery", "ship_torpedo", "ship_anti_air", "ship_fire_control_system",
+                "ship_sonar", "ship_radar", "ship_engine", "ship_armor" };
+        String[] resources = { "steel", "chromium", "aluminium", "tungsten", "oil", "rubber" };
+
+        sb.append("# synthetic data\n\n");
+        sb.append("equipments = {\n");
+        int n = 0;
+        while (sb.length() < size / 2) {
+            sb.append("\tship_hull_").append(n).append(" = {\n");
+            sb.append("\t\tyear = ").append(1922 + random.nextInt(24)).append("\n");
+            sb.append("\t\tis_archetype = ").append(random.nextBoolean() ? "yes" : "no").append("\n");
+            if (n > 0) {
+                sb.append("\t\tarchetype = ship_hull_").append(random.nextInt(n)).append("\n");
+            }
+            sb.append("\t\ttype = { screen_ship anti_air_ship }\n");
+            sb.append("\t\tname = \"Ship Hull ").append(n).append("\" # display name\n");
+            sb.append("\t\tpriority = ").append(random.nextInt(5)).append("\n");
+            sb.append("\t\tnaval_speed = ").append(20 + random.nextInt(150) / 10.0).append("\n");
+            sb.append("\t\tmax_strength = ").append(100 + random.nextInt(900)).append("\n");
+            sb.append("\t\treliability = 0.").append(50 + random.nextInt(50)).append("\n");
+            sb.append("\t\tbuild_cost_ic = ").append(1000 + random.nextInt(9000)).append(".").append(random.nextInt(100)).append("\n");
+            sb.append("\t\tmanpower = ").append(100 + random.nextInt(2000)).append("\n");
+            sb.append("\t\tresources = {\n");
+            for (int r = 0; r < 3; r++) {
+                sb.append("\t\t\t").append(resources[random.nextInt(resources.length)]).append(" = ").append(1 + random.nextInt(4)).append("\n");
+            }
+            sb.append("\t\t}\n");
+            sb.append("\t\tmodule_slots = {\n");
+            for (int s = 0; s < 4; s++) {
+                sb.append("\t\t\tfixed_ship_slot_").append(s).append(" = {\n");
+                sb.append("\t\t\t\trequired = ").append(s == 0 ? "yes" : "no").append("\n");
+                sb.append("\t\t\t\tallowed_module_categories = { ").append(categories[random.nextInt(categories.length)])
+                        .append(" ").append(categories[random.nextInt(categories.length)]).append(" }\n");
+                sb.append("\t\t\t}\n");
+            }
+            sb.append("\t\t}\n");
+            sb.append("\t\tmodule_count_limit = {\n");
+            sb.append("\t\t\tcategory = ").append(categories[random.nextInt(categories.length)]).append("\n");
+            sb.append("\t\t\tcount < ").append(1 + random.nextInt(3)).append("\n");
+            sb.append("\t\t}\n");
+            sb.append("\t}\n");
+            n++;
+        }
+        sb.append("}\n\n");
+
+        // history-like entries with dates as keys
+        int year = 1936;
+        while (sb.length() < size) {
+            sb.append(year).append(".").append(1 + random.nextInt(12)).append(".").append(1 + random.nextInt(28)).append(" = {\n");
+            sb.append("\tcreate_equipment_variant = {\n");
+            sb.append("\t\tname = \"Variant ").append(random.nextInt(1000)).append("\"\n");
+            sb.append("\t\ttype = ship_hull_").append(random.nextInt(n)).append("\n");
+            sb.append("\t\tparent_version = ").append(random.nextInt(3)).append("\n");
+            sb.append("\t\tmodules = {\n");
+            for (int s = 0; s < 4; s++) {
+                sb.append("\t\t\tfixed_ship_slot_").append(s).append(" = ").append(categories[random.nextInt(categories.length)]).append("_").append(1 + random.nextInt(4)).append("\n");
+            }
+            sb.append("\t\t}\n");
+            sb.append("\t}\n");
+            sb.append("}\n");
+            year = year < 1945 ? year + 1 : 1936;
+        }
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
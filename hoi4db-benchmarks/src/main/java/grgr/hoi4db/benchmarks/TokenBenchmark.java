@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import grgr.hoi4db.dataformat.Hoi4DbFactory;
+import grgr.hoi4db.dataformat.Hoi4DbParser;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Raw token throughput of {@link grgr.hoi4db.dataformat.Hoi4DbParser} and
+ * {@link grgr.hoi4db.dataformat.Hoi4DbUTF8StreamParser}. Each operation parses all inputs. Additionally tokens
+ * and bytes per second are reported.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenBenchmark {
+
+    private final Hoi4DbFactory factory = new Hoi4DbFactory();
+    private final Hoi4DbFactory notTrackingFactory = new Hoi4DbFactory().disable(Hoi4DbParser.Feature.TRACK_LOCATION);
+
+    @Benchmark
+    public void bytes(Inputs inputs, Counters counters, Blackhole bh) throws IOException {
+        for (byte[] data : inputs.bytes) {
+            counters.bytes += data.length;
+            counters.tokens += tokens(factory.createParser(data), bh);
+        }
+    }
+
+    /**
+     * Like {@link #bytes} but rows and columns are not tracked.
+     */
+    @Benchmark
+    public void bytesWithoutLocation(Inputs inputs, Counters counters, Blackhole bh) throws IOException {
+        for (byte[] data : inputs.bytes) {
+            counters.bytes += data.length;
+            counters.tokens += tokens(notTrackingFactory.createParser(data), bh);
+        }
+    }
+
+    @Benchmark
+    public void reader(Inputs inputs, Counters counters, Blackhole bh) throws IOException {
+        for (String text : inputs.texts) {
+            counters.bytes += text.length();
+            counters.tokens += tokens(factory.createParser(new StringReader(text)), bh);
+        }
+    }
+
+    @Benchmark
+    public void mappedFile(Inputs inputs, Counters counters, Blackhole bh) throws IOException {
+        for (int i = 0; i < inputs.fileNames.length; i++) {
+            counters.bytes += inputs.bytes.get(i).length;
+            counters.tokens += tokens(factory.createParser(new File(inputs.dir, inputs.fileNames[i])), bh);
+        }
+    }
+
+    /**
+     * Reads only top level field names, skipping their scopes with {@link JsonParser#skipChildren()}.
+     */
+    @Benchmark
+    public void skipScopes(Inputs inputs, Counters counters, Blackhole bh) throws IOException {
+        for (byte[] data : inputs.bytes) {
+            counters.bytes += data.length;
+            try (JsonParser p = factory.createParser(data)) {
+                p.nextToken();
+                JsonToken t;
+                while ((t = p.nextToken()) != null && t != JsonToken.END_OBJECT) {
+                    counters.tokens++;
+                    bh.consume(p.getCurrentName());
+                    p.nextToken();
+                    p.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads all tokens together with field names and values (as chars where possible).
+     * @param parser
+     * @param bh
+     * @return
+     * @throws IOException
+     */
+    private long tokens(JsonParser parser, Blackhole bh) throws IOException {
+        long count = 0L;
+        try (JsonParser p = parser) {
+            JsonToken t;
+            while ((t = p.nextToken()) != null) {
+                count++;
+                if (t == JsonToken.FIELD_NAME) {
+                    bh.consume(p.getCurrentName());
+                } else if (t == JsonToken.VALUE_STRING) {
+                    bh.consume(p.getTextCharacters());
+                } else if (t == JsonToken.VALUE_NUMBER_INT) {
+                    bh.consume(p.getNumberType());
+                    bh.consume(p.getLongValue());
+                } else if (t == JsonToken.VALUE_NUMBER_FLOAT) {
+                    bh.consume(p.getDoubleValue());
+                }
+            }
+        }
+        return count;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long tokens;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0L;
+            bytes = 0L;
+        }
+    }
+
+}
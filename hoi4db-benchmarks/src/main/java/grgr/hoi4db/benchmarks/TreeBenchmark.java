@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import grgr.hoi4db.databind.Hoi4DbNodeFactory;
+import grgr.hoi4db.databind.Hoi4DbParallelReader;
+import grgr.hoi4db.dataformat.Hoi4DbFactory;
+import grgr.hoi4db.dataformat.Hoi4DbTokenCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building {@link com.fasterxml.jackson.databind.JsonNode} trees using {@link Hoi4DbNodeFactory} (and
+ * {@link grgr.hoi4db.databind.Hoi4DbObjectNode} with its handling of duplicate fields).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeBenchmark {
+
+    private final Hoi4DbFactory factory = new Hoi4DbFactory();
+    private final ObjectMapper mapper = new ObjectMapper(factory);
+
+    {
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+    }
+
+    private final Hoi4DbParallelReader parallelReader = new Hoi4DbParallelReader(mapper, ForkJoinPool.commonPool());
+
+    private Path cacheDir;
+    private Hoi4DbTokenCache cache;
+
+    @Setup(Level.Trial)
+    public void createCache() throws IOException {
+        cacheDir = Files.createTempDirectory("hoi4db-cache");
+        cache = new Hoi4DbTokenCache(factory, cacheDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCache() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(cacheDir);
+    }
+
+    @Benchmark
+    public void readTree(Inputs inputs, Blackhole bh) throws IOException {
+        for (byte[] data : inputs.bytes) {
+            bh.consume(mapper.readTree(data));
+        }
+    }
+
+    @Benchmark
+    public void readTreeParallel(Inputs inputs, Blackhole bh) throws IOException {
+        for (byte[] data : inputs.bytes) {
+            bh.consume(parallelReader.readTree(data));
+        }
+    }
+
+    @Benchmark
+    public void readTreeFromFile(Inputs inputs, Blackhole bh) throws IOException {
+        for (String fileName : inputs.fileNames) {
+            bh.consume(mapper.readTree(new File(inputs.dir, fileName)));
+        }
+    }
+
+    /**
+     * Reads the same files as {@link #readTreeFromFile} - but from {@link Hoi4DbTokenCache} (filled during first
+     * invocation).
+     */
+    @Benchmark
+    public void readTreeFromCache(Inputs inputs, Blackhole bh) throws IOException {
+        for (String fileName : inputs.fileNames) {
+            try (JsonParser parser = cache.createParser(new File(inputs.dir, fileName).toPath())) {
+                bh.consume(mapper.readTree(parser));
+            }
+        }
+    }
+
+}
@@ -31,6 +31,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import grgr.hoi4db.dataformat.Hoi4DbPathFilter;
 import grgr.hoi4db.model.DLC;
 import grgr.hoi4db.model.NamingRules;
 import grgr.hoi4db.model.Vanguard;
@@ -46,6 +47,7 @@ import org.slf4j.LoggerFactory;
 import static grgr.hoi4db.dao.Utils.asList;
 import static grgr.hoi4db.dao.Utils.isMtG;
 import static grgr.hoi4db.dao.Utils.withFileSet;
+import static grgr.hoi4db.dao.Utils.withLazyFileSet;
 
 /**
  * Accesses country-related data - uses naval/air/land data underneath
@@ -72,6 +74,11 @@ public class CountryData {
 
     private static Pattern YEAR_RE = Pattern.compile("(?<year>[0-9]{4})\\.\\d+\\.\\d+");
 
+    // only equipment variants (and their DLC limits) are read from country history files
+    private static Hoi4DbPathFilter VARIANTS_FILTER = Hoi4DbPathFilter.compile(
+            "if.limit", "if.create_equipment_variant",
+            "/" + YEAR_RE.pattern() + "/.if.limit", "/" + YEAR_RE.pattern() + "/.if.create_equipment_variant");
+
     private final NavalData navalData;
 
     private File hoi4Dir;
@@ -180,7 +187,7 @@ public class CountryData {
                 Map<ShipHullVariant.Key, ShipHullVariant> countryShipHullVariants = new TreeMap<>();
                 shipHullVariants.put(ccode, countryShipHullVariants);
 
-                withFileSet(new File(hoi4Dir, COUNTRIES), new String[] { name }, (file, tree) -> {
+                withFileSet(new File(hoi4Dir, COUNTRIES), new String[] { name }, VARIANTS_FILTER, (file, tree) -> {
                     List<JsonNode> ifs = asList(tree.get("if"));
                     ifs.forEach(o -> {
                         if (o.has("create_equipment_variant")) {
@@ -260,7 +267,8 @@ public class CountryData {
                 final DLC fdlc = dlc;
                 final int fpc = pc;
 
-                withFileSet(new File(hoi4Dir, UNITS), new String[] { name }, (file, tree) -> {
+                // only "units" scope is needed (not "instant_effect", "air_wings", ...)
+                withLazyFileSet(new File(hoi4Dir, UNITS), new String[] { name }, (file, tree) -> {
                     if (tree.required("units").size() == 0) {
                         return;
                     }
@@ -0,0 +1,630 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dao;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import grgr.hoi4db.dataformat.ConstrainedValue;
+import grgr.hoi4db.model.Constraint;
+import grgr.hoi4db.model.Conversion;
+import grgr.hoi4db.model.Resource;
+import grgr.hoi4db.model.ResourceAmount;
+import grgr.hoi4db.model.Stat;
+import grgr.hoi4db.model.naval.Module;
+import grgr.hoi4db.model.naval.ModuleCategory;
+import grgr.hoi4db.model.naval.ModuleCountLimit;
+import grgr.hoi4db.model.naval.ShipHull;
+import grgr.hoi4db.model.naval.ShipHullCategory;
+import grgr.hoi4db.model.naval.Slot;
+import grgr.hoi4db.model.upgrades.NavalUpgrade;
+
+/**
+ * <p>Binds {@link ShipHull ship hulls}, {@link Module modules} and {@link NavalUpgrade upgrades} directly from
+ * parser's tokens - in single pass over the fields of each definition, without building {@link
+ * com.fasterxml.jackson.databind.JsonNode trees}. Scopes and fields that are not needed are skipped.</p>
+ *
+ * <p>Ship hulls may be based on archetypes declared anywhere in their scope, so they're read as
+ * {@link HullDefinition definitions} to be applied later.</p>
+ */
+final class NavalBinder {
+
+    private NavalBinder() {
+    }
+
+    /**
+     * Reads definitions (object values of fields) inside top-level scope with given name. Other top-level fields
+     * are skipped. Parser should be positioned before the root object.
+     * @param parser
+     * @param scope
+     * @param reader
+     * @throws IOException
+     */
+    static void readScope(JsonParser parser, String scope, DefinitionReader reader) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && scope.equals(name)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String id = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        reader.read(id, parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads single entry of {@code /equipment_modules}.
+     * @param parser positioned at {@link JsonToken#START_OBJECT}
+     * @param id
+     * @return
+     * @throws IOException
+     */
+    static Module readModule(JsonParser parser, String id) throws IOException {
+        Module m = new Module(id);
+        // stats are added in the order of kinds, not fields
+        List<Stat> added = new ArrayList<>();
+        List<Stat> averages = new ArrayList<>();
+        List<Stat> percentages = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "category":
+                    m.setCategory(ModuleCategory.byName(text(parser)));
+                    break;
+                case "gfx":
+                    m.setGfx(text(parser));
+                    break;
+                case "sfx":
+                    m.setSfx(text(parser));
+                    break;
+                case "parent":
+                    m.setParentId(text(parser));
+                    break;
+                case "dismantle_cost_ic":
+                    m.setDismantleCost(integer(parser));
+                    break;
+                case "add_stats":
+                    readStats(parser, added, Stat::addedValue);
+                    break;
+                case "add_average_stats":
+                    readStats(parser, averages, Stat::addedAverageValue);
+                    break;
+                case "multiply_stats":
+                    readStats(parser, percentages, Stat::percentageValue);
+                    break;
+                case "can_convert_from":
+                    readConversion(parser, m);
+                    break;
+                case "build_cost_resources":
+                    readResources(parser, m.getResources());
+                    break;
+                case "dismantle_cost_resources":
+                    readResources(parser, m.getDismantleCostResources());
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        m.getStats().addAll(added);
+        m.getStats().addAll(averages);
+        m.getStats().addAll(percentages);
+        return m;
+    }
+
+    /**
+     * Reads single entry of {@code /upgrades}.
+     * @param parser positioned at {@link JsonToken#START_OBJECT}
+     * @param id
+     * @return
+     * @throws IOException
+     */
+    static NavalUpgrade readUpgrade(JsonParser parser, String id) throws IOException {
+        NavalUpgrade upgrade = new NavalUpgrade(id);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "max_level":
+                    upgrade.setMaxLevel(parser.getValueAsInt());
+                    break;
+                case "lg_attack":
+                    upgrade.setLightAttack(decimal(parser));
+                    break;
+                case "lg_armor_piercing":
+                    upgrade.setLightArmorPiercing(decimal(parser));
+                    break;
+                case "hg_attack":
+                    upgrade.setHeavyAttack(decimal(parser));
+                    break;
+                case "hg_armor_piercing":
+                    upgrade.setHeavyArmorPiercing(decimal(parser));
+                    break;
+                case "torpedo_attack":
+                    upgrade.setTorpedoAttack(decimal(parser));
+                    break;
+                case "sub_attack":
+                    upgrade.setSubAttack(decimal(parser));
+                    break;
+                case "anti_air_attack":
+                    upgrade.setAntiAirAttack(decimal(parser));
+                    break;
+                case "armor_value":
+                    upgrade.setArmor(decimal(parser));
+                    break;
+                case "sub_detection":
+                    upgrade.setSubDetection(decimal(parser));
+                    break;
+                case "sub_visibility":
+                    upgrade.setSubVisibility(decimal(parser));
+                    break;
+                case "naval_speed":
+                    upgrade.setNavalSpeed(decimal(parser));
+                    break;
+                case "naval_range":
+                    upgrade.setNavalRange(decimal(parser));
+                    break;
+                case "reliability":
+                    upgrade.setReliability(decimal(parser));
+                    break;
+                case "max_strength":
+                    upgrade.setHp(decimal(parser));
+                    break;
+                case "carrier_size":
+                    upgrade.setCarrierSize(decimal(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return upgrade;
+    }
+
+    /**
+     * Reads single entry of {@code /equipments} from ship hull file. All basic stats, Vanilla upgrades and
+     * {@code module_slots} are bound, {@code default_modules} are only collected.
+     * @param parser positioned at {@link JsonToken#START_OBJECT}
+     * @param id
+     * @param hullCategory
+     * @return
+     * @throws IOException
+     */
+    static HullDefinition readShipHull(JsonParser parser, String id, ShipHullCategory hullCategory) throws IOException {
+        HullDefinition d = new HullDefinition(id, hullCategory);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "is_archetype":
+                    d.archetype = parser.getValueAsBoolean();
+                    parser.skipChildren();
+                    break;
+                case "parent":
+                    d.parentId = text(parser);
+                    break;
+                case "archetype":
+                    d.archetypeId = text(parser);
+                    break;
+                case "year":
+                    d.year = parser.getValueAsInt();
+                    parser.skipChildren();
+                    break;
+                case "type":
+                    // types seem to be then taken from parent
+                    if (d.types == null) {
+                        d.types = new ArrayList<>();
+                    }
+                    d.types.addAll(texts(parser));
+                    break;
+                case "upgrades":
+                    d.upgrades = texts(parser);
+                    break;
+                case "interface_category":
+                    d.interfaceCategory = text(parser);
+                    break;
+                case "manpower":
+                    d.manpower = integer(parser);
+                    break;
+                case "resources":
+                    if (d.resources == null) {
+                        d.resources = new ArrayList<>();
+                    }
+                    readResources(parser, d.resources);
+                    break;
+                case "module_count_limit":
+                    if (d.moduleLimits == null) {
+                        d.moduleLimits = new ArrayList<>();
+                    }
+                    d.moduleLimits.add(readModuleCountLimit(parser));
+                    break;
+                case "module_slots":
+                    readModuleSlots(parser, d);
+                    break;
+                case "default_modules":
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String slotId = parser.getCurrentName();
+                            parser.nextToken();
+                            d.defaultModules.put(slotId, text(parser));
+                        }
+                    }
+                    break;
+                default:
+                    HullStat stat = HullStat.byField(name);
+                    if (stat != null) {
+                        d.stats[stat.ordinal()] = decimal(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Reads {@code modules_slots} of a hull. We may have:<ol>
+     *     <li>{@code module_slots = inherit} - everything is inherited from parent (or archetype if there's no
+     *     parent)</li>
+     *     <li>{@code module_slots = { x1 = yy x2 = inherit ... }} - selected slot is inherited, but the ones not
+     *     present are not inherited from parent modules_slots (see "ship_hull_pre_dreadnought" for example)</li>
+     *     <li>{@code module_slots = { x1 = yy x2 = x1 ... }} - copy of slot from the same module_slots</li>
+     * </ol>
+     */
+    private static void readModuleSlots(JsonParser parser, HullDefinition d) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            if ("inherit".equals(text(parser))) {
+                // we may inherit later from parent, instead of from archetype
+                d.clearSlots = true;
+                d.slots = null;
+            }
+            return;
+        }
+        Map<String, Slot> slots = new LinkedHashMap<>();
+        Map<String, String> refs = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String slotId = parser.getCurrentName();
+            Slot slot = new Slot(slotId);
+            JsonToken t = parser.nextToken();
+            if (t == JsonToken.START_OBJECT) {
+                // overriden
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("allowed_module_categories".equals(name)) {
+                        for (String category : texts(parser)) {
+                            slot.getCategoriesAllowed().add(ModuleCategory.byName(category));
+                        }
+                    } else if ("required".equals(name)) {
+                        slot.setRequired(parser.getValueAsBoolean());
+                        parser.skipChildren();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (t == JsonToken.VALUE_STRING) {
+                if ("inherit".equals(parser.getText())) {
+                    // inherited from parent hull
+                    slot = Slot.INHERITED;
+                } else {
+                    // a reference to slot from current hull - to be resolved later
+                    refs.put(slotId, parser.getText());
+                }
+            } else {
+                parser.skipChildren();
+            }
+            slots.put(slotId, slot);
+        }
+        // deep copy instead of reference
+        refs.forEach((k, ref) -> {
+            slots.get(k).setRequired(slots.get(ref).isRequired());
+            slots.get(k).getCategoriesAllowed().addAll(slots.get(ref).getCategoriesAllowed());
+        });
+        if (d.slots == null) {
+            d.slots = slots;
+        } else {
+            d.slots.putAll(slots);
+        }
+    }
+
+    private static ModuleCountLimit readModuleCountLimit(JsonParser parser) throws IOException {
+        ModuleCountLimit mcl = new ModuleCountLimit();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken t = parser.nextToken();
+            if ("count".equals(name)) {
+                Constraint c = t == JsonToken.VALUE_EMBEDDED_OBJECT && parser.getEmbeddedObject() instanceof ConstrainedValue
+                        ? new Constraint("count", (ConstrainedValue) parser.getEmbeddedObject())
+                        : new Constraint("count", text(parser));
+                mcl.setLimit(c);
+            } else if ("category".equals(name)) {
+                mcl.setModuleCategory(ModuleCategory.byName(text(parser)));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return mcl;
+    }
+
+    private static void readStats(JsonParser parser, List<Stat> stats, BiFunction<String, Number, Stat> producer)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            stats.add(producer.apply(name, number(parser)));
+        }
+    }
+
+    private static void readConversion(JsonParser parser, Module m) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        ModuleCategory category = null;
+        String module = null;
+        Number cost = null;
+        List<ResourceAmount> resources = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "module_category":
+                    category = ModuleCategory.byName(text(parser));
+                    break;
+                case "module":
+                    module = text(parser);
+                    break;
+                case "convert_cost_ic":
+                    cost = number(parser);
+                    break;
+                case "convert_cost_resources":
+                    readResources(parser, resources);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        Conversion c = category != null ? new Conversion(category, cost) : new Conversion(module, cost);
+        c.getResources().addAll(resources);
+        m.getConversions().add(c);
+    }
+
+    private static void readResources(JsonParser parser, List<ResourceAmount> resources) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            Resource resource = Resource.byName(parser.getCurrentName());
+            parser.nextToken();
+            resources.add(new ResourceAmount(resource, integer(parser)));
+        }
+    }
+
+    /**
+     * Text of current scalar value. Scopes are skipped and give empty text (like {@link
+     * com.fasterxml.jackson.databind.JsonNode#asText()}).
+     */
+    private static String text(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getText();
+    }
+
+    /**
+     * Texts of items of a single line array or single value.
+     */
+    private static List<String> texts(JsonParser parser) throws IOException {
+        List<String> texts = new ArrayList<>();
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                texts.add(text(parser));
+            }
+        } else {
+            texts.add(text(parser));
+        }
+        return texts;
+    }
+
+    private static Number number(JsonParser parser) throws IOException {
+        if (parser.currentToken().isNumeric()) {
+            return parser.getNumberValue();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static BigDecimal decimal(JsonParser parser) throws IOException {
+        if (parser.currentToken().isNumeric()) {
+            return parser.getDecimalValue();
+        }
+        parser.skipChildren();
+        return BigDecimal.ZERO;
+    }
+
+    private static BigInteger integer(JsonParser parser) throws IOException {
+        if (parser.currentToken().isNumeric()) {
+            return parser.getBigIntegerValue();
+        }
+        parser.skipChildren();
+        return BigInteger.ZERO;
+    }
+
+    /**
+     * Reads a definition (object) with given id.
+     */
+    @FunctionalInterface
+    interface DefinitionReader {
+        void read(String id, JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Decimal stats of a ship hull - with fields they're read from and setters to apply them.
+     */
+    private enum HullStat {
+        LIGHT_ATTACK("lg_attack", ShipHull::setLightAttack),
+        LIGHT_ARMOR_PIERCING("lg_armor_piercing", ShipHull::setLightArmorPiercing),
+        HEAVY_ATTACK("hg_attack", ShipHull::setHeavyAttack),
+        HEAVY_ARMOR_PIERCING("hg_armor_piercing", ShipHull::setHeavyArmorPiercing),
+        TORPEDO_ATTACK("torpedo_attack", ShipHull::setTorpedoAttack),
+        SUB_ATTACK("sub_attack", ShipHull::setSubAttack),
+        ANTI_AIR_ATTACK("anti_air_attack", ShipHull::setAntiAirAttack),
+        ARMOR("armor_value", ShipHull::setArmor),
+        HP("max_strength", ShipHull::setHp),
+        SURFACE_DETECTION("surface_detection", ShipHull::setSurfaceDetection),
+        SUB_DETECTION("sub_detection", ShipHull::setSubDetection),
+        SURFACE_VISIBILITY("surface_visibility", ShipHull::setSurfaceVisibility),
+        NAVAL_SPEED("naval_speed", ShipHull::setNavalSpeed),
+        NAVAL_RANGE("naval_range", ShipHull::setNavalRange),
+        RELIABILITY("reliability", ShipHull::setReliability),
+        FUEL_CONSUMPTION("fuel_consumption", ShipHull::setFuelConsumption),
+        BUILD_COST("build_cost_ic", ShipHull::setBuildCost);
+
+        // values() returns a new array each time
+        static final HullStat[] VALUES = values();
+        private static final Map<String, HullStat> BY_FIELD = new HashMap<>();
+
+        static {
+            for (HullStat stat : VALUES) {
+                BY_FIELD.put(stat.field, stat);
+            }
+        }
+
+        private final String field;
+        private final BiConsumer<ShipHull, BigDecimal> setter;
+
+        HullStat(String field, BiConsumer<ShipHull, BigDecimal> setter) {
+            this.field = field;
+            this.setter = setter;
+        }
+
+        static HullStat byField(String field) {
+            return BY_FIELD.get(field);
+        }
+    }
+
+    /**
+     * Ship hull read from hull file. Only the fields present in the file (non-null) are applied to a new hull or
+     * to a copy of its archetype.
+     */
+    static final class HullDefinition {
+
+        final String id;
+        final ShipHullCategory hullCategory;
+        boolean archetype;
+        String archetypeId;
+        String parentId;
+        Integer year;
+        String interfaceCategory;
+        BigInteger manpower;
+        // indexed by HullStat ordinal
+        final BigDecimal[] stats = new BigDecimal[HullStat.VALUES.length];
+        // all values of repeated fields
+        List<String> types;
+        List<ResourceAmount> resources;
+        List<ModuleCountLimit> moduleLimits;
+        // only the last one
+        List<String> upgrades;
+        // module_slots = inherit clears slots (of the archetype) - slots read after it are then added
+        boolean clearSlots;
+        Map<String, Slot> slots;
+        // slot id -> module id
+        final Map<String, String> defaultModules = new LinkedHashMap<>();
+
+        HullDefinition(String id, ShipHullCategory hullCategory) {
+            this.id = id;
+            this.hullCategory = hullCategory;
+        }
+
+        void applyTo(ShipHull sh) {
+            if (parentId != null) {
+                sh.setParentId(parentId);
+            }
+            if (archetypeId != null) {
+                sh.setArchetypeId(archetypeId);
+            }
+            if (year != null) {
+                sh.setYear(year);
+            }
+            if (interfaceCategory != null) {
+                sh.setInterfaceCategory(interfaceCategory);
+            }
+            if (manpower != null) {
+                sh.setManpower(manpower);
+            }
+            for (HullStat stat : HullStat.VALUES) {
+                if (stats[stat.ordinal()] != null) {
+                    stat.setter.accept(sh, stats[stat.ordinal()]);
+                }
+            }
+            if (types != null) {
+                sh.getTypes().clear();
+                sh.getTypes().addAll(types);
+            }
+            if (upgrades != null) {
+                sh.getUpgrades().clear();
+                sh.getUpgrades().addAll(upgrades);
+            }
+            if (resources != null) {
+                sh.getResources().clear();
+                sh.getResources().addAll(resources);
+            }
+            if (moduleLimits != null) {
+                sh.getModuleLimits().clear();
+                sh.getModuleLimits().addAll(moduleLimits);
+            }
+            if (clearSlots) {
+                sh.getSlots().clear();
+            }
+            if (slots != null) {
+                sh.getSlots().putAll(slots);
+            }
+        }
+
+    }
+
+}
@@ -20,23 +20,56 @@ package grgr.hoi4db.dao;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeType;
+import grgr.hoi4db.databind.Hoi4DbLazyReader;
+import grgr.hoi4db.databind.Hoi4DbMultiValueNode;
 import grgr.hoi4db.databind.Hoi4DbNodeFactory;
+import grgr.hoi4db.databind.Hoi4DbParallelReader;
 import grgr.hoi4db.dataformat.Hoi4DbFactory;
+import grgr.hoi4db.dataformat.Hoi4DbParser;
+import grgr.hoi4db.dataformat.Hoi4DbPathFilter;
+import grgr.hoi4db.dataformat.Hoi4DbTokenCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Utils {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Utils.class);
+
+    // identifiers (types, tags, ...) are short - longer values are usually unique texts
+    private static final int MAX_SHARED_VALUE_LENGTH = 64;
+
+    // one factory for all files, so field names and short values are shared between parsers (and trees kept
+    // in memory). Rows and columns are computed only when reporting errors
+    private static final Hoi4DbFactory FACTORY = new Hoi4DbFactory()
+            .disable(Hoi4DbParser.Feature.TRACK_LOCATION)
+            .setValueDeduplication(MAX_SHARED_VALUE_LENGTH);
+
+    // files bigger than this are split and parsed in parallel
+    private static final long PARALLEL_THRESHOLD = 4L * 1024 * 1024;
+
+    // optional cache of parsed tokens
+    private static volatile Hoi4DbTokenCache tokenCache;
+
     private Utils() {
     }
 
+    /**
+     * Enables caching of parsed tokens (of entire files) in given directory.
+     * @param cacheDir {@code null} to disable the cache
+     */
+    public static void useTokenCache(Path cacheDir) {
+        tokenCache = cacheDir == null ? null : new Hoi4DbTokenCache(FACTORY, cacheDir);
+    }
+
     /**
      * Processes set of files inside HoI4 directory. Entire {@link JsonNode} from the file is passed to
      * {@link Consumer}.
@@ -45,14 +78,78 @@ public class Utils {
      * @param processor
      */
     public static void withFileSet(File hoi4Dir, String[] filenames, BiConsumer<File, JsonNode> processor) {
-        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
-        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        withFileSet(hoi4Dir, filenames, null, processor);
+    }
+
+    /**
+     * Processes set of files inside HoI4 directory. Only fields matching the filter are read from the files and
+     * passed to {@link Consumer}.
+     * @param hoi4Dir
+     * @param filenames
+     * @param filter paths to read, {@code null} to read entire files
+     * @param processor
+     */
+    public static void withFileSet(File hoi4Dir, String[] filenames, Hoi4DbPathFilter filter, BiConsumer<File, JsonNode> processor) {
+        Hoi4DbTokenCache cache = tokenCache;
+        ObjectMapper mapper = new ObjectMapper(FACTORY);
+        // trees are only read by processors, so compact (and immutable) object nodes are enough
+        mapper.setNodeFactory(Hoi4DbNodeFactory.compact());
+        Hoi4DbParallelReader parallelReader = new Hoi4DbParallelReader(mapper, ForkJoinPool.commonPool());
 
         for (String fileName : filenames) {
             File file = new File(hoi4Dir, fileName);
             JsonNode tree = null;
             try {
-                tree = mapper.readTree(file);
+                if (filter != null) {
+                    try (Hoi4DbParser parser = FACTORY.parserFor(file.toPath())) {
+                        parser.setFilter(filter);
+                        tree = mapper.readTree(parser);
+                    }
+                } else if (cache != null) {
+                    try (JsonParser parser = cache.createParser(file.toPath())) {
+                        tree = mapper.readTree(parser);
+                    }
+                } else if (file.length() > PARALLEL_THRESHOLD) {
+                    tree = parallelReader.readTree(file.toPath());
+                } else {
+                    // many small files - parsers are reused
+                    try (Hoi4DbParser parser = FACTORY.parserFor(file.toPath())) {
+                        tree = mapper.readTree(parser);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            processor.accept(file, Hoi4DbNodeFactory.freeze(tree));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Field names: {}", FACTORY.getSymbolTable());
+            LOG.debug("Values: {}, retained bytes: {}", FACTORY.getValueTable(), FACTORY.getValueTable().getRetainedBytes());
+            LOG.debug("Read {}", FACTORY.getBufferPool());
+            if (cache != null) {
+                LOG.debug("{}", cache);
+            }
+        }
+    }
+
+    /**
+     * Processes set of files inside HoI4 directory. Top-level scopes of each file are parsed only when the
+     * processor accesses them (see {@link Hoi4DbLazyReader}), which is faster when only few top-level fields
+     * are needed.
+     * @param hoi4Dir
+     * @param filenames
+     * @param processor
+     */
+    public static void withLazyFileSet(File hoi4Dir, String[] filenames, BiConsumer<File, JsonNode> processor) {
+        ObjectMapper mapper = new ObjectMapper(FACTORY);
+        mapper.setNodeFactory(Hoi4DbNodeFactory.compact());
+        Hoi4DbLazyReader lazyReader = new Hoi4DbLazyReader(mapper);
+
+        for (String fileName : filenames) {
+            File file = new File(hoi4Dir, fileName);
+            JsonNode tree;
+            try {
+                tree = lazyReader.readTree(file.toPath());
             } catch (IOException e) {
                 throw new RuntimeException(e.getMessage(), e);
             }
@@ -61,22 +158,34 @@ public class Utils {
     }
 
     /**
-     * With {@link grgr.hoi4db.databind.Hoi4DbObjectNode}, a field may be normal field or an array. When there's only
-     * one field, it's not converted into {@link ArrayNode} during parsing. This method unifies access for single
-     * and multi valued fields.
+     * Processes set of files inside HoI4 directory without building {@link JsonNode trees}. Parser of each file
+     * is passed to {@link ParserProcessor}, which reads the tokens it needs (and skips the others).
+     * @param hoi4Dir
+     * @param filenames
+     * @param processor
+     */
+    public static void withFileSetParser(File hoi4Dir, String[] filenames, ParserProcessor processor) {
+        Hoi4DbTokenCache cache = tokenCache;
+        for (String fileName : filenames) {
+            File file = new File(hoi4Dir, fileName);
+            try (JsonParser parser = cache != null ? cache.createParser(file.toPath()) : FACTORY.parserFor(file.toPath())) {
+                processor.process(file, parser);
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * With {@link grgr.hoi4db.databind.Hoi4DbObjectNode}, a field may be normal field or
+     * {@link Hoi4DbMultiValueNode multi valued field}. When there's only one field, it's not converted into
+     * an array during parsing. This method unifies access for single and multi valued fields (and literal
+     * arrays) - values are not copied and the list is read-only.
      * @param n
      * @return
      */
     public static List<JsonNode> asList(JsonNode n) {
-        List<JsonNode> values = new LinkedList<>();
-        if (n == null) {
-            return values;
-        } else if (n.getNodeType() == JsonNodeType.ARRAY) {
-            n.elements().forEachRemaining(values::add);
-        } else {
-            values.add(n);
-        }
-        return values;
+        return Hoi4DbMultiValueNode.valuesOf(n);
     }
 
     /**
@@ -94,4 +203,12 @@ public class Utils {
                 && "Man the Guns".equals(n.get("limit").get("has_dlc").asText());
     }
 
+    /**
+     * Reads tokens of a file.
+     */
+    @FunctionalInterface
+    public interface ParserProcessor {
+        void process(File file, JsonParser parser) throws IOException;
+    }
+
 }
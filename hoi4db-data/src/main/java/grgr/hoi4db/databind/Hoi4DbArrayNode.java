@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.databind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+/**
+ * {@link ArrayNode} created by {@link Hoi4DbNodeFactory} - for literal <code>name = { a b }</code> arrays. It keeps
+ * read-only {@link List} view of its items, so {@link Hoi4DbMultiValueNode#valuesOf(JsonNode)} doesn't have to
+ * create one.
+ */
+// JsonNode declares deepCopy() as generic <T extends JsonNode> T, so overriding it is always unchecked (javac reports
+// it for the class, not the method)
+@SuppressWarnings("unchecked")
+public class Hoi4DbArrayNode extends ArrayNode {
+
+    final ArrayList<JsonNode> values;
+    private final List<JsonNode> view;
+
+    public Hoi4DbArrayNode(JsonNodeFactory nc) {
+        this(nc, new ArrayList<>());
+    }
+
+    public Hoi4DbArrayNode(JsonNodeFactory nc, int capacity) {
+        this(nc, new ArrayList<>(capacity));
+    }
+
+    Hoi4DbArrayNode(JsonNodeFactory nc, ArrayList<JsonNode> values) {
+        super(nc, values);
+        this.values = values;
+        this.view = Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Read-only view of the items.
+     * @return
+     */
+    public List<JsonNode> values() {
+        return view;
+    }
+
+    /**
+     * Trims the list of items after reading.
+     */
+    void trim() {
+        values.trimToSize();
+    }
+
+    @Override
+    public Hoi4DbArrayNode deepCopy() {
+        return new Hoi4DbArrayNode(_nodeFactory, copyValues());
+    }
+
+    ArrayList<JsonNode> copyValues() {
+        ArrayList<JsonNode> copy = new ArrayList<>(values.size());
+        for (JsonNode value : values) {
+            copy.add(value.deepCopy());
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.databind;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>Compact, insertion-ordered {@link Map} of fields of {@link Hoi4DbObjectNode} - parallel arrays of keys
+ * and values instead of {@link java.util.LinkedHashMap} entries. Most scopes in game files have only few
+ * fields, which are found by linear scan (field names come from parser's symbol table, so identity check
+ * usually succeeds). Bigger maps get open addressing index of positions.</p>
+ *
+ * <p>After {@link #freeze()} the arrays are trimmed and the map can't be modified anymore.</p>
+ */
+final class Hoi4DbCompactFields extends AbstractMap<String, JsonNode> {
+
+    // maps up to this size don't have the index
+    private static final int LINEAR_SCAN_SIZE = 8;
+
+    private static final String[] NO_KEYS = new String[0];
+    private static final JsonNode[] NO_VALUES = new JsonNode[0];
+
+    private String[] keys = NO_KEYS;
+    private JsonNode[] values = NO_VALUES;
+    private int size;
+
+    // positions + 1 (0 = free slot), used only when size > LINEAR_SCAN_SIZE
+    private int[] index;
+
+    private boolean frozen;
+
+    // structural modifications - for iterators
+    private int modCount;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public JsonNode get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int i = indexOf((String) key);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public JsonNode put(String key, JsonNode value) {
+        checkMutable();
+        int i = indexOf(key);
+        if (i >= 0) {
+            JsonNode previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        if (size == keys.length) {
+            int capacity = size == 0 ? 4 : size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        modCount++;
+        if (size > LINEAR_SCAN_SIZE) {
+            if (index == null || size * 2 > index.length) {
+                reindex();
+            } else {
+                insert(index, key, size - 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public JsonNode remove(Object key) {
+        checkMutable();
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int i = indexOf((String) key);
+        if (i < 0) {
+            return null;
+        }
+        JsonNode previous = values[i];
+        removeAt(i);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        checkMutable();
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        index = null;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<String, JsonNode>> entrySet() {
+        return new AbstractSet<Entry<String, JsonNode>>() {
+            @Override
+            public Iterator<Entry<String, JsonNode>> iterator() {
+                return new Itr<>(i -> new SimpleImmutableEntry<>(keys[i], values[i]));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Itr<>(i -> keys[i]);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Collection<JsonNode> values() {
+        return new AbstractCollection<JsonNode>() {
+            @Override
+            public Iterator<JsonNode> iterator() {
+                return new Itr<>(i -> values[i]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Trims the arrays and makes this map immutable.
+     */
+    void freeze() {
+        if (frozen) {
+            return;
+        }
+        if (keys.length > size) {
+            keys = size == 0 ? NO_KEYS : Arrays.copyOf(keys, size);
+            values = size == 0 ? NO_VALUES : Arrays.copyOf(values, size);
+        }
+        frozen = true;
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Object node is frozen");
+        }
+    }
+
+    private int indexOf(String key) {
+        if (index == null) {
+            String[] keys = this.keys;
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int pos = index[slot] - 1;
+            if (pos < 0) {
+                return -1;
+            }
+            String k = keys[pos];
+            if (k == key || k.equals(key)) {
+                return pos;
+            }
+        }
+    }
+
+    private void removeAt(int i) {
+        int moved = size - i - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, i + 1, keys, i, moved);
+            System.arraycopy(values, i + 1, values, i, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+        // positions have changed
+        index = null;
+        if (size > LINEAR_SCAN_SIZE) {
+            reindex();
+        }
+    }
+
+    private void reindex() {
+        int[] index = new int[Integer.highestOneBit(size * 4 - 1)];
+        for (int i = 0; i < size; i++) {
+            insert(index, keys[i], i);
+        }
+        this.index = index;
+    }
+
+    private static void insert(int[] index, String key, int pos) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = pos + 1;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Iterator over positions, supporting removal (e.g., by {@link com.fasterxml.jackson.databind.node.ObjectNode#retain}).
+     */
+    private final class Itr<T> implements Iterator<T> {
+
+        private final IntFunction<T> element;
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        Itr(IntFunction<T> element) {
+            this.element = element;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public T next() {
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return element.apply(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            checkMutable();
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.databind;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.ValueNode;
+import grgr.hoi4db.dataformat.ConstrainedValue;
+import grgr.hoi4db.dataformat.Hoi4DbGenerator;
+
+/**
+ * Tree node for {@link ConstrainedValue} (like {@code count < 2}), so operator and numeric value are available
+ * without parsing text.
+ */
+public class Hoi4DbConstrainedValueNode extends ValueNode {
+
+    private final ConstrainedValue value;
+
+    public Hoi4DbConstrainedValueNode(ConstrainedValue value) {
+        this.value = value;
+    }
+
+    public ConstrainedValue getConstrainedValue() {
+        return value;
+    }
+
+    public char getOperator() {
+        return value.getOperator();
+    }
+
+    @Override
+    public JsonToken asToken() {
+        return JsonToken.VALUE_EMBEDDED_OBJECT;
+    }
+
+    @Override
+    public JsonNodeType getNodeType() {
+        return JsonNodeType.POJO;
+    }
+
+    @Override
+    public Number numberValue() {
+        return value.getValue();
+    }
+
+    @Override
+    public int asInt(int defaultValue) {
+        return value.getValue().intValue();
+    }
+
+    @Override
+    public BigInteger bigIntegerValue() {
+        Number n = value.getValue();
+        return n instanceof BigInteger ? (BigInteger) n : decimalValue().toBigInteger();
+    }
+
+    @Override
+    public BigDecimal decimalValue() {
+        Number n = value.getValue();
+        if (n instanceof BigDecimal) {
+            return (BigDecimal) n;
+        }
+        if (n instanceof BigInteger) {
+            return new BigDecimal((BigInteger) n);
+        }
+        return n instanceof Double ? BigDecimal.valueOf(n.doubleValue()) : BigDecimal.valueOf(n.longValue());
+    }
+
+    @Override
+    public String asText() {
+        return value.toString();
+    }
+
+    /**
+     * {@link Hoi4DbGenerator} writes the value with its operator, other generators get the text.
+     */
+    @Override
+    public void serialize(JsonGenerator g, SerializerProvider provider) throws IOException {
+        if (g instanceof Hoi4DbGenerator) {
+            g.writeEmbeddedObject(value);
+        } else {
+            g.writeString(value.toString());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        return o instanceof Hoi4DbConstrainedValueNode && value.equals(((Hoi4DbConstrainedValueNode) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+}
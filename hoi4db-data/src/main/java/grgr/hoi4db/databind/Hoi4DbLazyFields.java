@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.databind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>Read-only, insertion-ordered {@link Map} of top-level fields read by {@link Hoi4DbLazyReader}. Scopes are
+ * kept only as ranges of the source data and are parsed when the value is accessed for the first time (later
+ * accesses return the same nodes). Checking names of the fields doesn't parse anything.</p>
+ *
+ * <p>Duplicate fields are turned into {@link Hoi4DbMultiValueNode multi valued fields} when materialized,
+ * exactly like {@link Hoi4DbObjectNode#replace(String, JsonNode)} does while reading entire tree.</p>
+ */
+final class Hoi4DbLazyFields extends AbstractMap<String, JsonNode> {
+
+    private final Hoi4DbLazyReader reader;
+    private final ByteBuffer data;
+    private final Charset charset;
+
+    // values are JsonNodes (read eagerly or already materialized) or Pending values
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+
+    Hoi4DbLazyFields(Hoi4DbLazyReader reader, ByteBuffer data, Charset charset) {
+        this.reader = reader;
+        this.data = data;
+        this.charset = charset;
+    }
+
+    /**
+     * Adds a scope, which is read (later) from given range of the data. The range contains entire
+     * {@code key = { ... }} field (and maybe whitespace and comments before it).
+     * @param name
+     * @param start
+     * @param end
+     */
+    void addScope(String name, int start, int end) {
+        add(name, new int[] { start, end });
+    }
+
+    /**
+     * Adds (scalar) value, which was already read.
+     * @param name
+     * @param value
+     */
+    void addValue(String name, JsonNode value) {
+        add(name, value);
+    }
+
+    private void add(String name, Object value) {
+        Object current = fields.get(name);
+        if (current == null) {
+            fields.put(name, value instanceof JsonNode ? value : new Pending(value));
+        } else if (current instanceof Pending) {
+            ((Pending) current).values.add(value);
+        } else {
+            Pending pending = new Pending(current);
+            pending.values.add(value);
+            fields.put(name, pending);
+        }
+    }
+
+    /**
+     * Number of fields, which were not parsed yet.
+     * @return
+     */
+    synchronized int pendingCount() {
+        int count = 0;
+        for (Object value : fields.values()) {
+            if (value instanceof Pending) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return fields.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return fields.containsKey(key);
+    }
+
+    @Override
+    public synchronized JsonNode get(Object key) {
+        Object value = fields.get(key);
+        if (value instanceof Pending) {
+            value = materialize((String) key, (Pending) value);
+            fields.put((String) key, value);
+        }
+        return (JsonNode) value;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(fields.keySet());
+    }
+
+    @Override
+    public Set<Entry<String, JsonNode>> entrySet() {
+        return new AbstractSet<Entry<String, JsonNode>>() {
+            @Override
+            public Iterator<Entry<String, JsonNode>> iterator() {
+                Iterator<String> names = fields.keySet().iterator();
+                return new Iterator<Entry<String, JsonNode>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return names.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, JsonNode> next() {
+                        return new LazyEntry(names.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return fields.size();
+            }
+        };
+    }
+
+    /**
+     * Parses pending scopes of the field and merges all its values.
+     */
+    private JsonNode materialize(String name, Pending pending) {
+        Hoi4DbObjectNode node = new Hoi4DbObjectNode(reader.getNodeFactory());
+        try {
+            for (Object value : pending.values) {
+                if (value instanceof int[]) {
+                    int[] range = (int[]) value;
+                    value = reader.readScope(data, charset, range[0], range[1]);
+                }
+                node.replace(name, (JsonNode) value);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        return Hoi4DbNodeFactory.freeze(node.get(name));
+    }
+
+    /**
+     * Values of a field not parsed yet - ranges of scopes and already read scalar values.
+     */
+    private static final class Pending {
+        final List<Object> values = new ArrayList<>(1);
+
+        Pending(Object value) {
+            values.add(value);
+        }
+    }
+
+    /**
+     * Entry materializing the value only when asked for it.
+     */
+    private final class LazyEntry implements Entry<String, JsonNode> {
+        private final String name;
+
+        LazyEntry(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getKey() {
+            return name;
+        }
+
+        @Override
+        public JsonNode getValue() {
+            return get(name);
+        }
+
+        @Override
+        public JsonNode setValue(JsonNode value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return name.equals(e.getKey()) && getValue().equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() ^ getValue().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + getValue();
+        }
+    }
+
+}
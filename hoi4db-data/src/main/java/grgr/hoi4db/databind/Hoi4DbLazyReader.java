@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.databind;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import grgr.hoi4db.dataformat.Hoi4DbFactory;
+import grgr.hoi4db.dataformat.Hoi4DbParser;
+import grgr.hoi4db.dataformat.Hoi4DbUTF8StreamParser;
+
+/**
+ * <p>Reads a file without parsing its top-level scopes. Parser only {@link Hoi4DbParser#skipChildren() skips}
+ * each top-level {@code key = { ... }} scope (counting braces, without creating tokens) and remembers where
+ * it starts and ends. Such scope is parsed into nodes when the field is accessed for the first time. Top-level
+ * scalar values are read immediately.</p>
+ *
+ * <p>Returned {@link Hoi4DbObjectNode} is read-only and keeps a reference to the data (or mapped file) until
+ * it's garbage collected. It's useful when only few top-level fields are needed (like single entry by ID),
+ * because time and memory depend on what's accessed, not on the size of the file.</p>
+ */
+public class Hoi4DbLazyReader {
+
+    private final ObjectMapper mapper;
+    private final Hoi4DbFactory factory;
+
+    /**
+     * @param mapper mapper using {@link Hoi4DbFactory} and {@link Hoi4DbNodeFactory}
+     */
+    public Hoi4DbLazyReader(ObjectMapper mapper) {
+        if (!(mapper.getFactory() instanceof Hoi4DbFactory)) {
+            throw new IllegalArgumentException("ObjectMapper should use " + Hoi4DbFactory.class.getName());
+        }
+        this.mapper = mapper;
+        this.factory = (Hoi4DbFactory) mapper.getFactory();
+    }
+
+    /**
+     * Reads memory mapped file.
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public ObjectNode readTree(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too big: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return readTree(buffer);
+        }
+    }
+
+    public ObjectNode readTree(byte[] data) throws IOException {
+        return readTree(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads the data between position and limit of passed buffer. The data must not change while the tree
+     * is used.
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public ObjectNode readTree(ByteBuffer data) throws IOException {
+        // offsets reported by the parser are relative to the position
+        ByteBuffer input = data.slice();
+        Hoi4DbLazyFields fields;
+        try (Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) factory.createParser(input)) {
+            // detected once for entire data - scopes are parsed with the same charset
+            fields = new Hoi4DbLazyFields(this, input, parser.getCharset());
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                // name of the field isn't a token with own offset, so the range starts after previous field
+                int start = (int) parser.getInputOffset();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    JsonToken t = parser.nextToken();
+                    if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        fields.addScope(name, start, (int) parser.getInputOffset());
+                    } else {
+                        fields.addValue(name, mapper.readTree(parser));
+                    }
+                    start = (int) parser.getInputOffset();
+                }
+            }
+        }
+        return new Hoi4DbObjectNode(getNodeFactory(), fields);
+    }
+
+    /**
+     * Number of top-level fields of the tree (read by this reader), which were not parsed yet.
+     * @param tree
+     * @return
+     */
+    public static int pendingFields(JsonNode tree) {
+        if (tree instanceof Hoi4DbObjectNode) {
+            return ((Hoi4DbObjectNode) tree).pendingFields();
+        }
+        return 0;
+    }
+
+    JsonNodeFactory getNodeFactory() {
+        return mapper.getNodeFactory();
+    }
+
+    /**
+     * Parses single {@code key = { ... }} field from given range of the data, returning its value.
+     * @param data
+     * @param charset
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    JsonNode readScope(ByteBuffer data, Charset charset, int start, int end) throws IOException {
+        ByteBuffer scope = data.duplicate();
+        // cast for Java 8 compatibility of compiled code
+        ((Buffer) scope).limit(end);
+        ((Buffer) scope).position(start);
+        try (Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) factory.createParser(scope)) {
+            parser.setCharset(charset);
+            if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+                throw new IOException("Expected field at offset " + start);
+            }
+            parser.nextToken();
+            return mapper.readTree(parser);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.databind;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import grgr.hoi4db.dataformat.Hoi4DbGenerator;
+
+/**
+ * <p>Values of a field repeated in a scope (<code>name = a name = b</code>) - created by
+ * {@link Hoi4DbObjectNode#replace(String, JsonNode)}. It's still an {@link ArrayNode}, but unlike literal
+ * <code>name = { a b }</code> arrays, it's written back by {@link Hoi4DbGenerator} as repeated fields.</p>
+ *
+ * <p>{@link #valuesOf(JsonNode)} gives the same read-only {@link List} view of values of single and repeated
+ * fields without copying them.</p>
+ */
+// JsonNode declares deepCopy() as generic <T extends JsonNode> T, so overriding it is always unchecked (javac reports
+// it for the class, not the method)
+@SuppressWarnings("unchecked")
+public class Hoi4DbMultiValueNode extends Hoi4DbArrayNode {
+
+    /**
+     * Creates node for a field that was found again in the scope.
+     * @param nc
+     * @param first value found earlier
+     * @param second duplicate value
+     */
+    public Hoi4DbMultiValueNode(JsonNodeFactory nc, JsonNode first, JsonNode second) {
+        this(nc, new ArrayList<>(4));
+        values.add(first);
+        values.add(second);
+    }
+
+    private Hoi4DbMultiValueNode(JsonNodeFactory nc, ArrayList<JsonNode> values) {
+        super(nc, values);
+    }
+
+    /**
+     * Returns read-only view of values of a field, which may be missing ({@code null}), single value, repeated
+     * field or literal array. Values are not copied and views of nodes created by {@link Hoi4DbNodeFactory}
+     * (arrays and objects) are not created again for each call - other nodes get a new view.
+     * @param n
+     * @return
+     */
+    public static List<JsonNode> valuesOf(JsonNode n) {
+        if (n == null) {
+            return Collections.emptyList();
+        } else if (n instanceof Hoi4DbArrayNode) {
+            return ((Hoi4DbArrayNode) n).values();
+        } else if (n instanceof Hoi4DbObjectNode) {
+            return ((Hoi4DbObjectNode) n).asValues();
+        } else if (n.isArray()) {
+            return new AbstractList<JsonNode>() {
+                @Override
+                public JsonNode get(int index) {
+                    return n.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return n.size();
+                }
+            };
+        }
+        return Collections.singletonList(n);
+    }
+
+    @Override
+    public Hoi4DbMultiValueNode deepCopy() {
+        return new Hoi4DbMultiValueNode(_nodeFactory, copyValues());
+    }
+
+    /**
+     * {@link Hoi4DbGenerator} writes the values as repeated fields, other generators get an array.
+     */
+    @Override
+    public void serialize(JsonGenerator g, SerializerProvider provider) throws IOException {
+        if (!(g instanceof Hoi4DbGenerator)) {
+            super.serialize(g, provider);
+            return;
+        }
+        ((Hoi4DbGenerator) g).writeStartRepeatedArray();
+        for (JsonNode value : values) {
+            ((BaseJsonNode) value).serialize(g, provider);
+        }
+        g.writeEndArray();
+    }
+
+}
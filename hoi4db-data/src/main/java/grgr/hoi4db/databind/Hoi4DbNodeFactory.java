@@ -18,14 +18,88 @@
  */
 package grgr.hoi4db.databind;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.ValueNode;
+import grgr.hoi4db.dataformat.ConstrainedValue;
 
 public class Hoi4DbNodeFactory extends JsonNodeFactory {
 
+    private final boolean compact;
+
+    public Hoi4DbNodeFactory() {
+        this(false);
+    }
+
+    private Hoi4DbNodeFactory(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Factory of object nodes that keep fields in arrays instead of {@link java.util.LinkedHashMap}. Such nodes
+     * take much less memory, but should be {@link #freeze(JsonNode) frozen} after reading.
+     * @return
+     */
+    public static Hoi4DbNodeFactory compact() {
+        return new Hoi4DbNodeFactory(true);
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
     @Override
     public ObjectNode objectNode() {
-        return new Hoi4DbObjectNode(this);
+        return compact ? new Hoi4DbObjectNode(this, new Hoi4DbCompactFields()) : new Hoi4DbObjectNode(this);
+    }
+
+    /**
+     * Arrays keep read-only view of their items - see {@link Hoi4DbMultiValueNode#valuesOf(JsonNode)}.
+     * @return
+     */
+    @Override
+    public ArrayNode arrayNode() {
+        return new Hoi4DbArrayNode(this);
+    }
+
+    @Override
+    public ArrayNode arrayNode(int capacity) {
+        return new Hoi4DbArrayNode(this, capacity);
+    }
+
+    /**
+     * Freezes compact object nodes of the tree - trims their fields and makes them immutable. Lists of
+     * arrays and {@link Hoi4DbMultiValueNode multi valued fields} are trimmed too.
+     * @param tree
+     * @return
+     */
+    public static <T extends JsonNode> T freeze(T tree) {
+        if (tree instanceof Hoi4DbObjectNode) {
+            ((Hoi4DbObjectNode) tree).freeze();
+        } else if (tree instanceof ArrayNode) {
+            if (tree instanceof Hoi4DbArrayNode) {
+                ((Hoi4DbArrayNode) tree).trim();
+            }
+            for (JsonNode item : tree) {
+                freeze(item);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * {@link ConstrainedValue constrained values} get their own node type.
+     * @param pojo
+     * @return
+     */
+    @Override
+    public ValueNode pojoNode(Object pojo) {
+        if (pojo instanceof ConstrainedValue) {
+            return new Hoi4DbConstrainedValueNode((ConstrainedValue) pojo);
+        }
+        return super.pojoNode(pojo);
     }
 
 }
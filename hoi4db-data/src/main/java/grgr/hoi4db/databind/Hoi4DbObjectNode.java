@@ -18,6 +18,8 @@
  */
 package grgr.hoi4db.databind;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -26,10 +28,15 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
- * Special {@link ObjectNode} that doesn't break on duplicate fields and converts them to arrays instead.
+ * Special {@link ObjectNode} that doesn't break on duplicate fields and converts them to
+ * {@link Hoi4DbMultiValueNode multi valued fields} instead. Scalar duplicates of literal arrays are added to the
+ * array.
  */
 public class Hoi4DbObjectNode extends ObjectNode {
 
+    // see asValues()
+    private List<JsonNode> _asValues;
+
     public Hoi4DbObjectNode(JsonNodeFactory nc) {
         super(nc);
     }
@@ -41,17 +48,16 @@ public class Hoi4DbObjectNode extends ObjectNode {
     @Override
     public JsonNode replace(String fieldName, JsonNode value) {
         if (_children.containsKey(fieldName)) {
-            // switch to array
+            // switch to multi valued field
             JsonNode current = _children.get(fieldName);
-            if (current instanceof ArrayNode) {
+            if (current instanceof Hoi4DbMultiValueNode
+                    || (current instanceof ArrayNode && !value.isContainerNode())) {
+                // duplicate is the next value of repeated field - or scalar item of a literal array (like it was
+                // before multi valued fields)
                 ((ArrayNode) current).add(value);
             } else {
-                ArrayNode array = new ArrayNode(this._nodeFactory);
-                // move previous value as first item
-                array.add(current);
-                // add duplicate as next item
-                array.add(value);
-                _children.put(fieldName, array);
+                // previous value becomes first item, duplicate - the next one
+                _children.put(fieldName, new Hoi4DbMultiValueNode(_nodeFactory, current, value));
             }
             return null;
         } else {
@@ -59,4 +65,40 @@ public class Hoi4DbObjectNode extends ObjectNode {
         }
     }
 
+    /**
+     * Single element, read-only list with this node - value of a field that is not repeated, for
+     * {@link Hoi4DbMultiValueNode#valuesOf(JsonNode)}. Created once.
+     * @return
+     */
+    List<JsonNode> asValues() {
+        List<JsonNode> values = _asValues;
+        if (values == null) {
+            values = Collections.singletonList(this);
+            _asValues = values;
+        }
+        return values;
+    }
+
+    /**
+     * Makes the node (and nested object nodes) immutable, if it was created with compact fields by
+     * {@link Hoi4DbNodeFactory#compact()} factory. Does nothing for other nodes.
+     */
+    public void freeze() {
+        if (!(_children instanceof Hoi4DbCompactFields) || ((Hoi4DbCompactFields) _children).isFrozen()) {
+            return;
+        }
+        ((Hoi4DbCompactFields) _children).freeze();
+        for (JsonNode child : _children.values()) {
+            Hoi4DbNodeFactory.freeze(child);
+        }
+    }
+
+    /**
+     * Number of fields not parsed yet, if the node was read by {@link Hoi4DbLazyReader}.
+     * @return
+     */
+    int pendingFields() {
+        return _children instanceof Hoi4DbLazyFields ? ((Hoi4DbLazyFields) _children).pendingCount() : 0;
+    }
+
 }
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.databind;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import grgr.hoi4db.dataformat.Hoi4DbFactory;
+import grgr.hoi4db.dataformat.Hoi4DbUTF8StreamParser;
+
+/**
+ * <p>Reads single (big) file in parallel. First the data is scanned (only braces, quotes and comments are
+ * checked) to find where top-level {@code key = { ... }} scopes end. The data is then split at some of these
+ * boundaries into chunks, which are parsed using {@link ForkJoinPool}.</p>
+ *
+ * <p>Fields of each chunk are collected in order and finally added to single {@link Hoi4DbObjectNode} using
+ * {@link Hoi4DbObjectNode#replace(String, JsonNode)} - so the tree is the same as the one read by single
+ * parser (including arrays created for duplicate fields).</p>
+ */
+public class Hoi4DbParallelReader {
+
+    /** Chunks smaller than this are not worth a separate task */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 256 * 1024;
+
+    private final ObjectMapper mapper;
+    private final Hoi4DbFactory factory;
+    private final ForkJoinPool pool;
+    private final int minChunkSize;
+
+    public Hoi4DbParallelReader(ObjectMapper mapper, ForkJoinPool pool) {
+        this(mapper, pool, DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param mapper mapper using {@link Hoi4DbFactory} and {@link Hoi4DbNodeFactory}
+     * @param pool
+     * @param minChunkSize
+     */
+    public Hoi4DbParallelReader(ObjectMapper mapper, ForkJoinPool pool, int minChunkSize) {
+        if (!(mapper.getFactory() instanceof Hoi4DbFactory)) {
+            throw new IllegalArgumentException("ObjectMapper should use " + Hoi4DbFactory.class.getName());
+        }
+        this.mapper = mapper;
+        this.factory = (Hoi4DbFactory) mapper.getFactory();
+        this.pool = pool;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Reads memory mapped file.
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public JsonNode readTree(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too big: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return readTree(buffer);
+        }
+    }
+
+    public JsonNode readTree(byte[] data) throws IOException {
+        return readTree(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads the data between position and limit of passed buffer.
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public JsonNode readTree(ByteBuffer data) throws IOException {
+        List<ByteBuffer> chunks = split(data);
+        if (chunks.size() == 1) {
+            // not worth parallel processing
+            return readSingle(data);
+        }
+
+        Charset charset;
+        try (Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) factory.createParser(data)) {
+            // detected once for entire data (like single parser would) - not from the first block of each chunk
+            charset = parser.getCharset();
+        }
+        List<ForkJoinTask<List<Map.Entry<String, JsonNode>>>> tasks = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            tasks.add(pool.submit(() -> readFields(chunk, charset)));
+        }
+
+        ObjectNode root = mapper.getNodeFactory().objectNode();
+        try {
+            for (ForkJoinTask<List<Map.Entry<String, JsonNode>>> task : tasks) {
+                // join in order of chunks, so duplicate fields are handled in the same order as in single parser
+                for (Map.Entry<String, JsonNode> field : task.join()) {
+                    root.replace(field.getKey(), field.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            if (!causedByIOException(e)) {
+                throw e;
+            }
+            // location of the problem would be relative to the chunk - let single parser report it
+            for (ForkJoinTask<?> task : tasks) {
+                task.cancel(false);
+            }
+            return readSingle(data);
+        }
+        return root;
+    }
+
+    private JsonNode readSingle(ByteBuffer data) throws IOException {
+        try (JsonParser parser = factory.createParser(data)) {
+            return mapper.readTree(parser);
+        }
+    }
+
+    private static boolean causedByIOException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a chunk, returning top-level fields without merging duplicates.
+     * @param chunk
+     * @param charset
+     * @return
+     * @throws IOException
+     */
+    private List<Map.Entry<String, JsonNode>> readFields(ByteBuffer chunk, Charset charset) throws IOException {
+        List<Map.Entry<String, JsonNode>> fields = new ArrayList<>();
+        try (Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) factory.createParser(chunk)) {
+            parser.setCharset(charset);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return fields;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                fields.add(new AbstractMap.SimpleImmutableEntry<>(name, mapper.readTree(parser)));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Splits the data after top-level scopes, so each chunk has at least {@link #minChunkSize} bytes (except
+     * the last one) and there are not many more chunks than threads in the pool.
+     * @param data
+     * @return
+     */
+    List<ByteBuffer> split(ByteBuffer data) {
+        int start = data.position();
+        int end = data.limit();
+        int chunkSize = Math.max(minChunkSize, (end - start) / (pool.getParallelism() * 4));
+
+        List<ByteBuffer> chunks = new ArrayList<>();
+        if (pool.getParallelism() < 2) {
+            // single thread gains nothing from splitting
+            chunks.add(data);
+            return chunks;
+        }
+        int depth = 0;
+        boolean inString = false;
+        boolean inComment = false;
+        boolean escape = false;
+        // last char (outside of strings and comments) seen at top level
+        int last = -1;
+        boolean namedScope = false;
+        int chunkStart = start;
+        for (int i = start; i < end; i++) {
+            int c = data.get(i) & 0xFF;
+            if (inComment) {
+                inComment = c != '\n' && c != '\r';
+            } else if (inString) {
+                if (c == '"' && !escape) {
+                    inString = false;
+                }
+                escape = c == '\\' && !escape;
+            } else if (c == '"') {
+                inString = true;
+                escape = false;
+            } else if (c == '#') {
+                inComment = true;
+            } else if (c == '{') {
+                if (depth++ == 0) {
+                    // only "key = { ... }" scopes are split points
+                    namedScope = last == '=';
+                }
+            } else if (c == '}') {
+                if (--depth == 0 && namedScope && i + 1 - chunkStart >= chunkSize && end - (i + 1) >= minChunkSize) {
+                    chunks.add(slice(data, chunkStart, i + 1));
+                    chunkStart = i + 1;
+                } else if (depth < 0) {
+                    // broken data - let single parser report the problem
+                    break;
+                }
+            }
+            if (depth == 0 && !inComment && !inString && c > ' ') {
+                last = c;
+            }
+        }
+        if (depth != 0) {
+            chunks.clear();
+            chunkStart = start;
+        }
+        chunks.add(slice(data, chunkStart, end));
+        return chunks;
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int start, int end) {
+        ByteBuffer chunk = data.duplicate();
+        // cast for Java 8 compatibility of compiled code
+        ((Buffer) chunk).limit(end);
+        ((Buffer) chunk).position(start);
+        return chunk;
+    }
+
+}
@@ -18,12 +18,18 @@
  */
 package grgr.hoi4db.dataformat;
 
+import java.util.Objects;
+
+/**
+ * Value with an operator other than {@code =}, like {@code count < 2}. Returned by {@link Hoi4DbParser} as
+ * {@link com.fasterxml.jackson.core.JsonToken#VALUE_EMBEDDED_OBJECT}.
+ */
 public class ConstrainedValue {
 
-    private char operator;
-    private Object value;
+    private final char operator;
+    private final Number value;
 
-    public ConstrainedValue(char operator, Object value) {
+    public ConstrainedValue(char operator, Number value) {
         this.operator = operator;
         this.value = value;
     }
@@ -32,10 +38,33 @@ public class ConstrainedValue {
         return operator;
     }
 
-    public Object getValue() {
+    /**
+     * {@link Integer}, {@link Long} or {@link Double} value - {@link java.math.BigInteger} or
+     * {@link java.math.BigDecimal} only if the number doesn't fit without loss (the same rules as for numeric
+     * tokens of {@link Hoi4DbParser})
+     * @return
+     */
+    public Number getValue() {
         return value;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ConstrainedValue that = (ConstrainedValue) o;
+        return operator == that.operator && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operator, value);
+    }
+
     @Override
     public String toString() {
         return "((" + operator + " " + value + "))";
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Pool of read buffers shared by all parsers of single {@link Hoi4DbFactory}. Jackson's
+ * {@link com.fasterxml.jackson.core.util.BufferRecycler} keeps buffers in {@link ThreadLocal thread locals}, which
+ * doesn't help when each file is parsed in new (virtual or short-lived) thread - every parser allocates fresh
+ * buffer then.</p>
+ *
+ * <p>Buffers are kept in fixed number of slots taken and returned with CAS operations only - there are no locks
+ * or thread locals, so the pool may be used from any number of (virtual) threads. When all slots are empty, new
+ * buffer is allocated. When all slots are full, returned buffer is left for garbage collector.</p>
+ */
+public final class Hoi4DbBufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int MIN_BUFFER_SIZE = 64 * 1024;
+
+    private final int bufferSize;
+    private final Hoi4DbObjectPool<byte[]> bytes;
+    private final Hoi4DbObjectPool<char[]> chars;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates pool of {@link #DEFAULT_BUFFER_SIZE} buffers with number of slots depending on number of processors.
+     */
+    public Hoi4DbBufferPool() {
+        this(DEFAULT_BUFFER_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates pool of buffers with given size (in bytes or chars) keeping at most {@code capacity} buffers
+     * of each kind.
+     * @param bufferSize at least {@link #MIN_BUFFER_SIZE}
+     * @param capacity
+     */
+    public Hoi4DbBufferPool(int bufferSize, int capacity) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size should be at least " + MIN_BUFFER_SIZE + ", was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        bytes = new Hoi4DbObjectPool<>(capacity);
+        chars = new Hoi4DbObjectPool<>(capacity);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Takes byte buffer from the pool or allocates new one.
+     * @return
+     */
+    public byte[] allocBytes() {
+        byte[] buffer = bytes.poll();
+        if (buffer != null) {
+            hits.increment();
+            return buffer;
+        }
+        misses.increment();
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Returns byte buffer to the pool. Buffers of different size are ignored.
+     * @param buffer
+     */
+    public void releaseBytes(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            bytes.offer(buffer);
+        }
+    }
+
+    /**
+     * Takes char buffer from the pool or allocates new one.
+     * @return
+     */
+    public char[] allocChars() {
+        char[] buffer = chars.poll();
+        if (buffer != null) {
+            hits.increment();
+            return buffer;
+        }
+        misses.increment();
+        return new char[bufferSize];
+    }
+
+    /**
+     * Returns char buffer to the pool. Buffers of different size are ignored.
+     * @param buffer
+     */
+    public void releaseChars(char[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            chars.offer(buffer);
+        }
+    }
+
+    /**
+     * Number of allocations that reused pooled buffer.
+     * @return
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of allocations that created new buffer.
+     * @return
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long h = getHitCount();
+        long total = h + getMissCount();
+        return total == 0L ? 0d : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("buffers: %d bytes, hits: %d, misses: %d, hit ratio: %.02f%%",
+                bufferSize, getHitCount(), getMissCount(), getHitRatio() * 100d);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+/**
+ * Character classes used by HOI4 parsers (like Jackson's {@link com.fasterxml.jackson.core.io.CharTypes}). ASCII
+ * characters are classified with single lookup into {@link #TYPES} bitmask table, other characters use
+ * (much rarer) Unicode fallback.
+ */
+final class Hoi4DbCharTypes {
+
+    /** Letters - {@code a-z}, {@code A-Z} */
+    static final int LETTER = 0x01;
+    /** Characters of names (and unquoted values): letters, digits and {@code _.@?:-'} */
+    static final int NAME = 0x02;
+    /** Characters of numbers: digits and {@code +-.} */
+    static final int NUMBER = 0x04;
+    /** Characters of unquoted values: {@link #NAME}, {@link #NUMBER} and {@code /} */
+    static final int VALUE = 0x08;
+    /** Characters skipped between tokens: whitespace, end of lines and {@code #} starting a comment */
+    static final int SKIP = 0x10;
+
+    static final byte[] TYPES = new byte[128];
+
+    static {
+        for (int c = 'a'; c <= 'z'; c++) {
+            TYPES[c] |= LETTER | NAME | VALUE;
+        }
+        for (int c = 'A'; c <= 'Z'; c++) {
+            TYPES[c] |= LETTER | NAME | VALUE;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            TYPES[c] |= NAME | NUMBER | VALUE;
+        }
+        for (char c : "_.@?:-'".toCharArray()) {
+            TYPES[c] |= NAME | VALUE;
+        }
+        for (char c : "+-.".toCharArray()) {
+            TYPES[c] |= NUMBER | VALUE;
+        }
+        TYPES['/'] |= VALUE;
+        for (char c : " \t\r\n#".toCharArray()) {
+            TYPES[c] |= SKIP;
+        }
+    }
+
+    private Hoi4DbCharTypes() {
+    }
+
+    static boolean is(int c, int type) {
+        return c < 128 ? c >= 0 && (TYPES[c] & type) != 0 : unicode(c, type);
+    }
+
+    /**
+     * Fallback for non-ASCII characters.
+     * @param c
+     * @param type
+     * @return
+     */
+    private static boolean unicode(int c, int type) {
+        if (c == '’') {
+            // apostrophe used in some names
+            return (type & (NAME | VALUE)) != 0;
+        }
+        return (type & LETTER) != 0 && Character.isLetter(c);
+    }
+
+}
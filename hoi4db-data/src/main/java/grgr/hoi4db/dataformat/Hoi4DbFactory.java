@@ -18,33 +18,317 @@
  */
 package grgr.hoi4db.dataformat;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.nio.charset.StandardCharsets;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.core.util.BufferRecycler;
 
 public class Hoi4DbFactory extends JsonFactory {
 
     public final static String FORMAT_NAME_HOI4 = "HOI4";
 
+    private static final int PARSER_POOL_SIZE = 4 * Runtime.getRuntime().availableProcessors();
+
+    // field names shared by all parsers created by this factory
+    protected final transient Hoi4DbSymbolTable _rootSymbols = Hoi4DbSymbolTable.createRoot();
+
+    // canonical String values shared by parsers - null if values are not deduplicated
+    protected transient volatile Hoi4DbSymbolTable _rootValues;
+    protected int _maxValueLength;
+
+    // read buffers of parsers reading from InputStream or Reader
+    protected transient volatile Hoi4DbBufferPool _bufferPool = new Hoi4DbBufferPool();
+
+    // closed parsers to reuse - see parserFor()
+    protected final transient Hoi4DbObjectPool<Hoi4DbParser> _byteParsers = new Hoi4DbObjectPool<>(PARSER_POOL_SIZE);
+    protected final transient Hoi4DbObjectPool<Hoi4DbParser> _charParsers = new Hoi4DbObjectPool<>(PARSER_POOL_SIZE);
+
+    // Hoi4DbParser.Feature flags set on created parsers
+    protected int _formatParserFeatures = Hoi4DbParser.Feature.collectDefaults();
+
     @Override
     public String getFormatName() {
         return FORMAT_NAME_HOI4;
     }
 
+    /**
+     * Returns table of field names (with statistics) shared by parsers created by this factory.
+     * @return
+     */
+    public Hoi4DbSymbolTable getSymbolTable() {
+        return _rootSymbols;
+    }
+
+    /**
+     * Makes parsers return canonical instances of repeated String values (hull, module and equipment types,
+     * country tags, name groups, ...) - also across files, like field names. It saves memory when parsed trees
+     * are kept.
+     * @param maxLength longer values are not deduplicated, {@code 0} disables deduplication
+     * @return
+     */
+    public Hoi4DbFactory setValueDeduplication(int maxLength) {
+        if (maxLength <= 0) {
+            _rootValues = null;
+        } else if (_rootValues == null) {
+            _rootValues = Hoi4DbSymbolTable.createRoot();
+        }
+        _maxValueLength = Math.max(maxLength, 0);
+        return this;
+    }
+
+    /**
+     * Returns table of canonical String values (with statistics and retained size).
+     * @return {@code null} if values are not deduplicated
+     */
+    public Hoi4DbSymbolTable getValueTable() {
+        return _rootValues;
+    }
+
+    /**
+     * Returns pool of read buffers used by parsers reading from {@link InputStream} or {@link Reader}.
+     * @return {@code null} if buffers are taken from Jackson's thread local {@link IOContext}
+     */
+    public Hoi4DbBufferPool getBufferPool() {
+        return _bufferPool;
+    }
+
+    /**
+     * Sets pool of read buffers (e.g., with bigger buffers) for parsers created later.
+     * @param bufferPool {@code null} to use Jackson's thread local buffers
+     * @return
+     */
+    public Hoi4DbFactory setBufferPool(Hoi4DbBufferPool bufferPool) {
+        _bufferPool = bufferPool;
+        return this;
+    }
+
+    @Override
+    public Class<Hoi4DbParser.Feature> getFormatReadFeatureType() {
+        return Hoi4DbParser.Feature.class;
+    }
+
+    public Hoi4DbFactory configure(Hoi4DbParser.Feature f, boolean state) {
+        return state ? enable(f) : disable(f);
+    }
+
+    public Hoi4DbFactory enable(Hoi4DbParser.Feature f) {
+        _formatParserFeatures |= f.getMask();
+        return this;
+    }
+
+    public Hoi4DbFactory disable(Hoi4DbParser.Feature f) {
+        _formatParserFeatures &= ~f.getMask();
+        return this;
+    }
+
+    public boolean isEnabled(Hoi4DbParser.Feature f) {
+        return f.enabledIn(_formatParserFeatures);
+    }
+
+    /**
+     * Game files are memory mapped, so entire file is parsed without read calls and copying data between buffers.
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public JsonParser createParser(File f) throws IOException {
+        return _createMappedParser(f.toPath(), _createContext(f, true));
+    }
+
+    /**
+     * Creates parser for memory mapped file.
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public JsonParser createParser(Path path) throws IOException {
+        return _createMappedParser(path, _createContext(path, true));
+    }
+
+    /**
+     * Creates parser for memory mapped file, which reads only fields matching passed paths.
+     * @param path
+     * @param filter
+     * @return
+     * @throws IOException
+     */
+    public JsonParser createParser(Path path, Hoi4DbPathFilter filter) throws IOException {
+        Hoi4DbParser parser = (Hoi4DbParser) createParser(path);
+        parser.setFilter(filter);
+        return parser;
+    }
+
+    /**
+     * Creates parser for data between position and limit of passed {@link ByteBuffer} (e.g., part of memory
+     * mapped file). Buffer's position and limit are not changed.
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public JsonParser createParser(ByteBuffer data) throws IOException {
+        return _configure(new Hoi4DbUTF8StreamParser(_createContext(data, false), 0, data.duplicate(),
+                _rootSymbols.makeChild()));
+    }
+
+    /**
+     * Returns parser for memory mapped file. Parser closed earlier is {@link Hoi4DbUTF8StreamParser#reset(Path)
+     * reused} if available - together with its buffers, parsing contexts and symbol table. Closing returned parser
+     * puts it back to the pool, so it must not be used after {@link JsonParser#close()}.
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public Hoi4DbParser parserFor(Path path) throws IOException {
+        if (_inputDecorator != null) {
+            // decorated streams can't be mapped
+            return parserFor(Files.newInputStream(path));
+        }
+        Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) _byteParsers.poll();
+        if (parser == null) {
+            parser = (Hoi4DbUTF8StreamParser) _createMappedParser(path, _createPooledContext(path));
+        } else {
+            parser.reset(path);
+            _configure(parser);
+        }
+        return _pooled(parser, _byteParsers);
+    }
+
+    /**
+     * Returns parser for {@link InputStream} - reused like in {@link #parserFor(Path)}.
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public Hoi4DbParser parserFor(InputStream in) throws IOException {
+        Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) _byteParsers.poll();
+        if (parser == null) {
+            IOContext ctxt = _createPooledContext(in);
+            parser = (Hoi4DbUTF8StreamParser) _createParser(_decorate(in, ctxt), ctxt);
+        } else {
+            parser.reset(_decorate(in, parser.getIOContext()));
+            _configure(parser);
+        }
+        return _pooled(parser, _byteParsers);
+    }
+
+    /**
+     * Returns parser for {@link Reader} - reused like in {@link #parserFor(Path)}.
+     * @param r
+     * @return
+     * @throws IOException
+     */
+    public Hoi4DbParser parserFor(Reader r) throws IOException {
+        Hoi4DbParser parser = _charParsers.poll();
+        if (parser == null) {
+            IOContext ctxt = _createPooledContext(r);
+            parser = (Hoi4DbParser) _createParser(_decorate(r, ctxt), ctxt);
+        } else {
+            parser.reset(_decorate(r, parser.getIOContext()));
+            _configure(parser);
+        }
+        return _pooled(parser, _charParsers);
+    }
+
+    /**
+     * Pooled parsers may be used by different threads, so each has own {@link BufferRecycler} instead of
+     * thread local one.
+     */
+    protected IOContext _createPooledContext(Object srcRef) {
+        return new IOContext(new BufferRecycler(), srcRef, true);
+    }
+
+    private Hoi4DbParser _pooled(Hoi4DbParser parser, Hoi4DbObjectPool<Hoi4DbParser> pool) {
+        parser._parserPool = pool;
+        return parser;
+    }
+
+    protected JsonParser _createMappedParser(Path path, IOContext ctxt) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (_inputDecorator != null || size > Integer.MAX_VALUE) {
+                // mapping is valid for single ByteBuffer only
+                return _createParser(_decorate(Files.newInputStream(path), ctxt), ctxt);
+            }
+            // mapping stays valid after closing the channel
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return _configure(new Hoi4DbUTF8StreamParser(ctxt, 0, buffer, _rootSymbols.makeChild()));
+        }
+    }
+
+    @Override
+    public boolean canParseAsync() {
+        return true;
+    }
+
+    /**
+     * Creates parser, which doesn't read the data - it has to be fed using
+     * {@link com.fasterxml.jackson.core.async.ByteArrayFeeder} available as
+     * {@link JsonParser#getNonBlockingInputFeeder()}.
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public JsonParser createNonBlockingByteArrayParser() throws IOException {
+        return _configure(new Hoi4DbNonBlockingParser(_createNonBlockingContext(null), 0, _rootSymbols.makeChild()));
+    }
+
+    /**
+     * Applies {@link Hoi4DbParser.Feature HOI4 features} and value deduplication of this factory to new (or
+     * reused) parser. Reused parser keeps its value table if deduplication wasn't changed in the meantime.
+     */
+    protected <P extends Hoi4DbParser> P _configure(P parser) {
+        parser.overrideFormatFeatures(_formatParserFeatures, ~0);
+        parser.setValueTable(_rootValues, _maxValueLength);
+        return parser;
+    }
+
+    @Override
+    protected JsonGenerator _createUTF8Generator(OutputStream out, IOContext ctxt) throws IOException {
+        return new Hoi4DbGenerator(ctxt, _generatorFeatures, _objectCodec, out);
+    }
+
+    @Override
+    protected JsonGenerator _createGenerator(Writer out, IOContext ctxt) throws IOException {
+        return new Hoi4DbGenerator(ctxt, _generatorFeatures, _objectCodec, out);
+    }
+
     @Override
     protected JsonParser _createParser(InputStream in, IOContext ctxt) throws IOException {
-        return new Hoi4DbParser(ctxt, 0, new InputStreamReader(in, StandardCharsets.UTF_8));
+        return _configure(new Hoi4DbUTF8StreamParser(ctxt, 0, in, _rootSymbols.makeChild(), _bufferPool));
+    }
+
+    @Override
+    protected JsonParser _createParser(byte[] data, int offset, int len, IOContext ctxt) throws IOException {
+        return _configure(new Hoi4DbUTF8StreamParser(ctxt, 0, data, offset, len, _rootSymbols.makeChild()));
     }
 
     @Override
     protected JsonParser _createParser(Reader r, IOContext ctxt) throws IOException {
-        return new Hoi4DbParser(ctxt, 0, r);
+        return _configure(new Hoi4DbParser(ctxt, 0, r, _rootSymbols.makeChild(), _bufferPool));
+    }
+
+    /**
+     * Short Strings are passed as {@code char[]} - without this override {@link JsonFactory} would create JSON parser.
+     */
+    @Override
+    protected JsonParser _createParser(char[] data, int offset, int len, IOContext ctxt, boolean recyclable) throws IOException {
+        return _configure(new Hoi4DbParser(ctxt, 0, data, offset, len, recyclable,
+                _rootSymbols.makeChild()));
     }
 
 }
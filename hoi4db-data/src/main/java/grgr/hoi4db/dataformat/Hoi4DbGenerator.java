@@ -0,0 +1,895 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.base.GeneratorBase;
+import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.core.io.NumberOutput;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.NAME;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.VALUE;
+
+/**
+ * <p>{@link com.fasterxml.jackson.core.JsonGenerator} writing HOI4 script - reverse of {@link Hoi4DbParser}:<ul>
+ *     <li>root object is written without braces - its fields are top level fields of the file</li>
+ *     <li>objects are written as <code>name = { ... }</code> scopes with one field per line</li>
+ *     <li>arrays of scalar values are written in single line: <code>name = { a b c }</code></li>
+ *     <li>arrays starting with an object (or array) are written as repeated fields - that's how
+ *     {@link grgr.hoi4db.databind.Hoi4DbObjectNode} keeps duplicate fields</li>
+ *     <li>arrays started with {@link #writeStartRepeatedArray()} (by
+ *     {@link grgr.hoi4db.databind.Hoi4DbMultiValueNode}) are always written as repeated fields</li>
+ *     <li>objects inside single line arrays are written without braces (<code>a name = { ... } c</code>) - their
+ *     fields can only be objects, because that's all {@link Hoi4DbParser} reads there. Other values of such fields
+ *     and arrays inside single line arrays are reported as errors</li>
+ *     <li>{@link ConstrainedValue constrained values} (passed to {@link #writeObject(Object)} or
+ *     {@link #writeEmbeddedObject(Object)}) are written with their operator: <code>count &lt; 2</code> - Strings
+ *     are always written as they are</li>
+ * </ul></p>
+ *
+ * <p>UTF-8 bytes are written directly to {@link OutputStream}. When writing to {@link Writer}, buffered bytes are
+ * decoded on flush (into reused char buffer).</p>
+ */
+public class Hoi4DbGenerator extends GeneratorBase {
+
+    // kinds of scopes being written
+    private static final int ROOT = 0;
+    private static final int OBJECT = 1;
+    private static final int ITEM_OBJECT = 2;
+    private static final int LITERAL_ARRAY = 3;
+    private static final int REPEATED_ARRAY = 4;
+    private static final int PENDING_ARRAY = 5;
+    private static final int ROOT_ARRAY = 6;
+
+    private static final byte[] INDENTS = new byte[64];
+    private static final byte[] YES = "yes".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO = "no".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        Arrays.fill(INDENTS, (byte) '\t');
+    }
+
+    protected final IOContext _ioContext;
+
+    private OutputStream _out;
+    private Writer _writer;
+    // used only with _writer
+    private CharsetDecoder _decoder;
+    private CharBuffer _charBuffer;
+
+    protected byte[] _outputBuffer;
+    protected int _outputTail;
+    protected final int _outputEnd;
+
+    // stack of scope kinds with field names used for repeated fields
+    private int[] _scopes = new int[16];
+    private String[] _scopeNames = new String[16];
+    private int _depth;
+
+    // number of open braces
+    private int _indent;
+
+    // field name waiting for a value
+    private String _pendingName;
+
+    // whether anything was written
+    private boolean _started;
+
+    public Hoi4DbGenerator(IOContext ctxt, int features, ObjectCodec codec, OutputStream out) {
+        super(features, codec);
+        _ioContext = ctxt;
+        _out = out;
+        _outputBuffer = ctxt.allocWriteEncodingBuffer();
+        _outputEnd = _outputBuffer.length;
+    }
+
+    public Hoi4DbGenerator(IOContext ctxt, int features, ObjectCodec codec, Writer writer) {
+        super(features, codec);
+        _ioContext = ctxt;
+        _writer = writer;
+        _outputBuffer = ctxt.allocWriteEncodingBuffer();
+        _outputEnd = _outputBuffer.length;
+    }
+
+    @Override
+    public Object getOutputTarget() {
+        return _out != null ? _out : _writer;
+    }
+
+    @Override
+    public int getOutputBuffered() {
+        return _outputTail;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        _verifyValueWrite("start an object");
+        if (_depth == 0) {
+            push(ROOT, null);
+        } else if (scope() == LITERAL_ARRAY || scope() == ROOT_ARRAY) {
+            // fields are written as array items
+            push(ITEM_OBJECT, null);
+        } else {
+            writeValuePrefix('=', true);
+            writeByte((byte) '{');
+            _indent++;
+            push(OBJECT, null);
+        }
+        _writeContext = _writeContext.createChildObjectContext();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        if (!_writeContext.inObject()) {
+            _reportError("Current context not Object but " + _writeContext.typeDesc());
+        }
+        if (_pendingName != null) {
+            _reportError("Can not end an object, field \"" + _pendingName + "\" has no value");
+        }
+        boolean empty = _writeContext.getEntryCount() == 0;
+        _writeContext = _writeContext.clearAndGetParent();
+        switch (pop()) {
+            case ROOT:
+                if (_started) {
+                    writeByte((byte) '\n');
+                }
+                break;
+            case OBJECT:
+                if (empty && inItemObject()) {
+                    _reportError("Can not write empty object inside single line array");
+                }
+                _indent--;
+                newLine();
+                writeByte((byte) '}');
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        _verifyValueWrite("start an array");
+        if (_depth == 0) {
+            push(ROOT_ARRAY, null);
+        } else if (scope() == ROOT || scope() == OBJECT || scope() == ITEM_OBJECT) {
+            // kind of array is known after first item
+            push(PENDING_ARRAY, _pendingName);
+            _pendingName = null;
+        } else {
+            if (scope() == LITERAL_ARRAY || inItemObject()) {
+                _reportError("Can not start an array inside single line array");
+            }
+            writeValuePrefix('=', true);
+            writeByte((byte) '{');
+            push(LITERAL_ARRAY, null);
+        }
+        _writeContext = _writeContext.createChildArrayContext();
+    }
+
+    /**
+     * Starts an array of values of repeated field. Unlike {@link #writeStartArray()}, scalar items are written as
+     * repeated fields too (<code>name = a name = b</code> instead of <code>name = { a b }</code>). Outside of
+     * objects it's the same as {@link #writeStartArray()}.
+     * @throws IOException
+     */
+    public void writeStartRepeatedArray() throws IOException {
+        if (_depth == 0 || !(scope() == ROOT || scope() == OBJECT || scope() == ITEM_OBJECT)) {
+            writeStartArray();
+            return;
+        }
+        _verifyValueWrite("start an array");
+        push(REPEATED_ARRAY, _pendingName);
+        _pendingName = null;
+        _writeContext = _writeContext.createChildArrayContext();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        if (!_writeContext.inArray()) {
+            _reportError("Current context not Array but " + _writeContext.typeDesc());
+        }
+        _writeContext = _writeContext.clearAndGetParent();
+        String name = _scopeNames[_depth - 1];
+        switch (pop()) {
+            case PENDING_ARRAY:
+                // empty array
+                if (scope() == ITEM_OBJECT) {
+                    _reportError("Can not write empty array inside single line array");
+                }
+                writeFieldPrefix(name, '=', scope() == ITEM_OBJECT);
+                writeByte((byte) '{');
+                writeByte((byte) ' ');
+                writeByte((byte) '}');
+                break;
+            case LITERAL_ARRAY:
+                writeByte((byte) ' ');
+                writeByte((byte) '}');
+                break;
+            case ROOT_ARRAY:
+                if (_started) {
+                    writeByte((byte) '\n');
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        if (_writeContext.writeFieldName(name) == JsonWriteContext.STATUS_EXPECT_VALUE) {
+            _reportError("Can not write a field name, expecting a value");
+        }
+        _pendingName = name;
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        if (text == null) {
+            writeNull();
+            return;
+        }
+        _verifyValueWrite("write a string");
+        writeValuePrefix('=', false);
+        writeValue(text);
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int len) throws IOException {
+        _verifyValueWrite("write a string");
+        writeValuePrefix('=', false);
+        // chars are encoded from passed array
+        writeValue(CharBuffer.wrap(text, offset, len));
+    }
+
+    /**
+     * {@link ConstrainedValue} is written with its operator.
+     * @param object
+     * @throws IOException
+     */
+    @Override
+    public void writeEmbeddedObject(Object object) throws IOException {
+        if (!(object instanceof ConstrainedValue)) {
+            super.writeEmbeddedObject(object);
+            return;
+        }
+        ConstrainedValue cv = (ConstrainedValue) object;
+        if (!canWriteOperator()) {
+            writeString(cv.toString());
+            return;
+        }
+        _verifyValueWrite("write a constrained value");
+        writeValuePrefix(cv.getOperator(), false);
+        Number value = cv.getValue();
+        String text;
+        if (value instanceof BigDecimal) {
+            text = ((BigDecimal) value).toPlainString();
+        } else if (value instanceof Double) {
+            // no exponent in game files
+            text = BigDecimal.valueOf(value.doubleValue()).toPlainString();
+        } else {
+            text = String.valueOf(value);
+        }
+        writeChars(text, 0, text.length());
+    }
+
+    @Override
+    public void writeObject(Object value) throws IOException {
+        if (value instanceof ConstrainedValue) {
+            writeEmbeddedObject(value);
+        } else {
+            super.writeObject(value);
+        }
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeUTF8String(text, offset, length);
+    }
+
+    /**
+     * Bytes are copied to the output buffer as they are (and decoded only when writing to {@link Writer}).
+     */
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+        _verifyValueWrite("write a string");
+        writeValuePrefix('=', false);
+        int end = offset + length;
+        if (isPlainValue(text, offset, end)) {
+            writeUTF8(text, offset, end);
+        } else {
+            if (length > 0 && text[end - 1] == '\\') {
+                _reportError("Can not write \"" + new String(text, offset, length, StandardCharsets.UTF_8)
+                        + "\" - quoted value can't end with a backslash");
+            }
+            writeByte((byte) '"');
+            int start = offset;
+            for (int i = offset; i < end; i++) {
+                // quote byte is never part of multi-byte character
+                if (text[i] == '"') {
+                    writeUTF8(text, start, i);
+                    writeByte((byte) '\\');
+                    writeByte((byte) '"');
+                    start = i + 1;
+                }
+            }
+            writeUTF8(text, start, end);
+            writeByte((byte) '"');
+        }
+    }
+
+    @Override
+    public void writeRaw(String text) throws IOException {
+        writeChars(text, 0, text.length());
+    }
+
+    @Override
+    public void writeRaw(String text, int offset, int len) throws IOException {
+        writeChars(text, offset, offset + len);
+    }
+
+    @Override
+    public void writeRaw(char[] text, int offset, int len) throws IOException {
+        writeChars(CharBuffer.wrap(text, offset, len), 0, len);
+    }
+
+    @Override
+    public void writeRaw(char c) throws IOException {
+        if (c < 0x80) {
+            writeByte((byte) c);
+        } else {
+            writeChars(CharBuffer.wrap(new char[] { c }), 0, 1);
+        }
+    }
+
+    @Override
+    public void writeRawValue(String text) throws IOException {
+        _verifyValueWrite("write raw value");
+        writeValuePrefix('=', false);
+        writeRaw(text);
+    }
+
+    @Override
+    public void writeBinary(Base64Variant bv, byte[] data, int offset, int len) throws IOException {
+        writeString(bv.encode(offset == 0 && len == data.length ? data : Arrays.copyOfRange(data, offset, offset + len)));
+    }
+
+    @Override
+    public void writeNumber(int v) throws IOException {
+        _verifyValueWrite("write a number");
+        writeValuePrefix('=', false);
+        if (_outputTail + 11 > _outputEnd) {
+            flushBuffer();
+        }
+        _outputTail = NumberOutput.outputInt(v, _outputBuffer, _outputTail);
+    }
+
+    @Override
+    public void writeNumber(long v) throws IOException {
+        _verifyValueWrite("write a number");
+        writeValuePrefix('=', false);
+        if (_outputTail + 20 > _outputEnd) {
+            flushBuffer();
+        }
+        _outputTail = NumberOutput.outputLong(v, _outputBuffer, _outputTail);
+    }
+
+    @Override
+    public void writeNumber(BigInteger v) throws IOException {
+        if (v == null) {
+            writeNull();
+            return;
+        }
+        writeNumber(v.toString());
+    }
+
+    @Override
+    public void writeNumber(double v) throws IOException {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            writeString(Double.toString(v));
+            return;
+        }
+        String text = Double.toString(v);
+        // no exponent in game files - BigDecimal only when needed
+        writeNumber(text.indexOf('E') < 0 ? text : BigDecimal.valueOf(v).toPlainString());
+    }
+
+    @Override
+    public void writeNumber(float v) throws IOException {
+        if (Float.isNaN(v) || Float.isInfinite(v)) {
+            writeString(Float.toString(v));
+            return;
+        }
+        String text = Float.toString(v);
+        writeNumber(text.indexOf('E') < 0 ? text : new BigDecimal(text).toPlainString());
+    }
+
+    @Override
+    public void writeNumber(BigDecimal v) throws IOException {
+        if (v == null) {
+            writeNull();
+            return;
+        }
+        writeNumber(v.toPlainString());
+    }
+
+    @Override
+    public void writeNumber(String encodedValue) throws IOException {
+        _verifyValueWrite("write a number");
+        writeValuePrefix('=', false);
+        writeChars(encodedValue, 0, encodedValue.length());
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        _verifyValueWrite("write a boolean value");
+        writeValuePrefix('=', false);
+        writeBytes(state ? YES : NO);
+    }
+
+    /**
+     * There's no {@code null} in HOI4 script - empty value is written instead (and read back as empty String).
+     */
+    @Override
+    public void writeNull() throws IOException {
+        _verifyValueWrite("write a null");
+        writeValuePrefix('=', false);
+        writeByte((byte) '"');
+        writeByte((byte) '"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (isEnabled(Feature.FLUSH_PASSED_TO_STREAM)) {
+            if (_out != null) {
+                _out.flush();
+            } else if (_writer != null) {
+                _writer.flush();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed()) {
+            return;
+        }
+        if (isEnabled(Feature.AUTO_CLOSE_JSON_CONTENT)) {
+            while (true) {
+                JsonStreamContext ctxt = getOutputContext();
+                if (ctxt.inArray()) {
+                    writeEndArray();
+                } else if (ctxt.inObject()) {
+                    writeEndObject();
+                } else {
+                    break;
+                }
+            }
+        }
+        super.close();
+        flushBuffer();
+        _outputTail = 0;
+        if (_ioContext.isResourceManaged() || isEnabled(Feature.AUTO_CLOSE_TARGET)) {
+            if (_out != null) {
+                _out.close();
+            } else if (_writer != null) {
+                _writer.close();
+            }
+        } else if (isEnabled(Feature.FLUSH_PASSED_TO_STREAM)) {
+            if (_out != null) {
+                _out.flush();
+            } else if (_writer != null) {
+                _writer.flush();
+            }
+        }
+        _releaseBuffers();
+    }
+
+    @Override
+    protected void _releaseBuffers() {
+        byte[] buf = _outputBuffer;
+        if (buf != null) {
+            _outputBuffer = null;
+            _ioContext.releaseWriteEncodingBuffer(buf);
+        }
+        CharBuffer chars = _charBuffer;
+        if (chars != null) {
+            _charBuffer = null;
+            _ioContext.releaseConcatBuffer(chars.array());
+        }
+    }
+
+    @Override
+    protected void _verifyValueWrite(String typeMsg) throws IOException {
+        if (_writeContext.writeValue() == JsonWriteContext.STATUS_EXPECT_NAME) {
+            _reportError("Can not " + typeMsg + ", expecting field name");
+        }
+    }
+
+    private int scope() {
+        return _scopes[_depth - 1];
+    }
+
+    private void push(int scope, String name) {
+        if (_depth == _scopes.length) {
+            _scopes = Arrays.copyOf(_scopes, _depth << 1);
+            _scopeNames = Arrays.copyOf(_scopeNames, _depth << 1);
+        }
+        _scopes[_depth] = scope;
+        _scopeNames[_depth++] = name;
+    }
+
+    private int pop() {
+        _scopeNames[--_depth] = null;
+        return _scopes[_depth];
+    }
+
+    /**
+     * Operators can be written only for values of fields.
+     */
+    private boolean canWriteOperator() {
+        if (_depth == 0) {
+            return false;
+        }
+        int scope = scope();
+        return scope != LITERAL_ARRAY && scope != ROOT_ARRAY;
+    }
+
+    /**
+     * Writes whatever should precede a value in current scope - field name, separator or beginning of an array.
+     * @param operator
+     * @param scopeStart whether the value is an object or array
+     */
+    private void writeValuePrefix(char operator, boolean scopeStart) throws IOException {
+        if (_depth == 0) {
+            newLine();
+            return;
+        }
+        if (!scopeStart && inItemObject()) {
+            _reportError("Can not write a value inside single line array as a field - only objects can be fields there");
+        }
+        switch (scope()) {
+            case ROOT:
+            case OBJECT:
+            case ITEM_OBJECT:
+                writeFieldPrefix(_pendingName, operator, scope() == ITEM_OBJECT);
+                _pendingName = null;
+                break;
+            case LITERAL_ARRAY:
+                writeByte((byte) ' ');
+                break;
+            case ROOT_ARRAY:
+                newLine();
+                break;
+            case REPEATED_ARRAY:
+                writeFieldPrefix(_scopeNames[_depth - 1], operator, _depth > 1 && _scopes[_depth - 2] == ITEM_OBJECT);
+                break;
+            case PENDING_ARRAY:
+                boolean inline = _depth > 1 && _scopes[_depth - 2] == ITEM_OBJECT;
+                if (scopeStart || operator != '=') {
+                    // field was repeated
+                    _scopes[_depth - 1] = REPEATED_ARRAY;
+                    writeFieldPrefix(_scopeNames[_depth - 1], operator, inline);
+                } else {
+                    _scopes[_depth - 1] = LITERAL_ARRAY;
+                    writeFieldPrefix(_scopeNames[_depth - 1], '=', inline);
+                    writeByte((byte) '{');
+                    writeByte((byte) ' ');
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Whether values are written for a field of an object inside single line array (directly or as items of
+     * repeated field).
+     */
+    private boolean inItemObject() {
+        int scope = scope();
+        return scope == ITEM_OBJECT
+                || ((scope == REPEATED_ARRAY || scope == PENDING_ARRAY) && _depth > 1 && _scopes[_depth - 2] == ITEM_OBJECT);
+    }
+
+    /**
+     * Writes <code>name = </code> in new line (or after a space for objects inside arrays).
+     */
+    private void writeFieldPrefix(String name, char operator, boolean inline) throws IOException {
+        if (inline) {
+            writeByte((byte) ' ');
+        } else {
+            newLine();
+        }
+        if (isName(name)) {
+            writeChars(name, 0, name.length());
+        } else {
+            writeQuoted(name);
+        }
+        writeByte((byte) ' ');
+        writeByte((byte) operator);
+        writeByte((byte) ' ');
+    }
+
+    private void newLine() throws IOException {
+        if (_started) {
+            writeByte((byte) '\n');
+        }
+        _started = true;
+        int indent = _indent;
+        while (indent > 0) {
+            int len = Math.min(indent, INDENTS.length);
+            writeBytes(INDENTS, len);
+            indent -= len;
+        }
+    }
+
+    /**
+     * Writes String value - quoted if it contains characters not allowed in plain values or if it would be read
+     * back as number or boolean.
+     */
+    private void writeValue(CharSequence text) throws IOException {
+        if (isPlainValue(text)) {
+            writeChars(text, 0, text.length());
+        } else {
+            writeQuoted(text);
+        }
+    }
+
+    /**
+     * Quotes inside the value are escaped with backslash ({@link Hoi4DbParser} reads them back without it).
+     * Backslashes can't be escaped - the parser takes quote after any backslashes as escaped, so value ending
+     * with a backslash can't be written.
+     */
+    private void writeQuoted(CharSequence text) throws IOException {
+        if (text.length() > 0 && text.charAt(text.length() - 1) == '\\') {
+            _reportError("Can not write \"" + text + "\" - quoted value can't end with a backslash");
+        }
+        writeByte((byte) '"');
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                writeChars(text, start, i);
+                writeByte((byte) '\\');
+                writeByte((byte) '"');
+                start = i + 1;
+            }
+        }
+        writeChars(text, start, text.length());
+        writeByte((byte) '"');
+    }
+
+    private static boolean isName(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Hoi4DbCharTypes.is(name.charAt(i), NAME)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPlainValue(CharSequence text) {
+        if (text.length() == 0) {
+            return false;
+        }
+        char c = text.charAt(0);
+        if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') {
+            // could be read as number
+            return false;
+        }
+        if (isKeyword(text, "yes") || isKeyword(text, "no") || isKeyword(text, "true") || isKeyword(text, "false")) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Hoi4DbCharTypes.is(text.charAt(i), VALUE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@link #isPlainValue(CharSequence)} for UTF-8 encoded value.
+     */
+    private static boolean isPlainValue(byte[] text, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        int c = text[start];
+        if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') {
+            return false;
+        }
+        if (isKeyword(text, start, end, "yes") || isKeyword(text, start, end, "no")
+                || isKeyword(text, start, end, "true") || isKeyword(text, start, end, "false")) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            c = text[i] & 0xff;
+            if (c >= 0x80) {
+                // decode (rare) non-ASCII character to classify it
+                int len = c >= 0xf0 ? 4 : c >= 0xe0 ? 3 : 2;
+                if (i + len > end) {
+                    return false;
+                }
+                c &= 0x3f >> (len - 1);
+                for (int j = 1; j < len; j++) {
+                    c = (c << 6) | (text[++i] & 0x3f);
+                }
+            }
+            if (!Hoi4DbCharTypes.is(c, VALUE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isKeyword(byte[] text, int start, int end, String keyword) {
+        if (end - start != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (Character.toLowerCase(text[start + i]) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isKeyword(CharSequence text, String keyword) {
+        if (text.length() != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (Character.toLowerCase(text.charAt(i)) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes characters (of a String or wrapped char array) as UTF-8. Buffer is never flushed in the middle of
+     * a character.
+     */
+    private void writeChars(CharSequence text, int start, int end) throws IOException {
+        byte[] buf = _outputBuffer;
+        int ptr = _outputTail;
+        for (int i = start; i < end; i++) {
+            if (ptr + 4 > _outputEnd) {
+                _outputTail = ptr;
+                flushBuffer();
+                ptr = 0;
+            }
+            int c = text.charAt(i);
+            if (c < 0x80) {
+                buf[ptr++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[ptr++] = (byte) (0xc0 | (c >> 6));
+                buf[ptr++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, text.charAt(++i));
+                buf[ptr++] = (byte) (0xf0 | (c >> 18));
+                buf[ptr++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+                buf[ptr++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[ptr++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+                if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    // unpaired surrogate
+                    c = 0xfffd;
+                }
+                buf[ptr++] = (byte) (0xe0 | (c >> 12));
+                buf[ptr++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[ptr++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        _outputTail = ptr;
+    }
+
+    /**
+     * Copies UTF-8 encoded characters. Like in {@link #writeChars(CharSequence, int, int)}, buffer is never flushed
+     * in the middle of a character.
+     */
+    private void writeUTF8(byte[] text, int start, int end) throws IOException {
+        while (start < end) {
+            int len = Math.min(end - start, _outputEnd - _outputTail);
+            if (len < end - start) {
+                // step back to the first byte of a character
+                while (len > 0 && (text[start + len] & 0xc0) == 0x80) {
+                    len--;
+                }
+            }
+            System.arraycopy(text, start, _outputBuffer, _outputTail, len);
+            _outputTail += len;
+            start += len;
+            if (start < end) {
+                flushBuffer();
+            }
+        }
+    }
+
+    private void writeByte(byte b) throws IOException {
+        if (_outputTail >= _outputEnd) {
+            flushBuffer();
+        }
+        _outputBuffer[_outputTail++] = b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, bytes.length);
+    }
+
+    private void writeBytes(byte[] bytes, int len) throws IOException {
+        if (_outputTail + len > _outputEnd) {
+            flushBuffer();
+        }
+        System.arraycopy(bytes, 0, _outputBuffer, _outputTail, len);
+        _outputTail += len;
+    }
+
+    /**
+     * Decodes buffered bytes into reused char buffer and passes them to the {@link Writer}. Buffer never ends
+     * in the middle of a character, so nothing is left in the decoder.
+     */
+    private void decodeToWriter(int len) throws IOException {
+        if (_decoder == null) {
+            _decoder = StandardCharsets.UTF_8.newDecoder();
+            _charBuffer = CharBuffer.wrap(_ioContext.allocConcatBuffer());
+        }
+        ByteBuffer in = ByteBuffer.wrap(_outputBuffer, 0, len);
+        CoderResult result;
+        do {
+            result = _decoder.decode(in, _charBuffer, false);
+            _writer.write(_charBuffer.array(), 0, _charBuffer.position());
+            _charBuffer.clear();
+        } while (result.isOverflow());
+    }
+
+    protected void flushBuffer() throws IOException {
+        int len = _outputTail;
+        if (len > 0 && _outputBuffer != null) {
+            _outputTail = 0;
+            if (_out != null) {
+                _out.write(_outputBuffer, 0, len);
+            } else if (_writer != null) {
+                decodeToWriter(len);
+            }
+        }
+    }
+
+}
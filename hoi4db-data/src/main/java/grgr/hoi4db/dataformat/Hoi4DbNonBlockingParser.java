@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.async.NonBlockingInputFeeder;
+import com.fasterxml.jackson.core.io.IOContext;
+
+/**
+ * <p>Non-blocking {@link Hoi4DbParser} (like Jackson's {@link com.fasterxml.jackson.core.json.async.NonBlockingJsonParser})
+ * which doesn't read the data - it's fed with chunks of bytes as they arrive (e.g., from NIO channel or Undertow
+ * request body) using {@link #feedInput(byte[], int, int)}. {@link JsonToken#NOT_AVAILABLE} is returned until
+ * complete token is available.</p>
+ *
+ * <p>The state machine of {@link Hoi4DbParser} is shared - it's run only when the buffered data contains enough
+ * complete lexemes (names, values, operators, braces) for the next token, otherwise {@link JsonToken#NOT_AVAILABLE}
+ * is returned right away. Bytes not yet consumed are kept in the buffer.</p>
+ */
+public class Hoi4DbNonBlockingParser extends Hoi4DbUTF8StreamParser implements ByteArrayFeeder {
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    // complete lexemes needed by the longest step of the state machine ("{ name = {" - the last one only to find
+    // out where the previous one ends)
+    private static final int LOOKAHEAD = 4;
+
+    private boolean _endOfInput;
+    private boolean _bomChecked;
+
+    // set when the state machine ran out of data, but end of input wasn't signalled
+    private boolean _underflow;
+
+    // token to continue from after returning NOT_AVAILABLE
+    private JsonToken _pendingToken;
+
+    public Hoi4DbNonBlockingParser(IOContext ctxt, int features, Hoi4DbSymbolTable symbols) {
+        super(ctxt, features, ByteBuffer.wrap(NO_BYTES), symbols);
+        _inputBytes = NO_BYTES;
+    }
+
+    /**
+     * Fed data is discarded after parsing, so location is always tracked.
+     * @return
+     */
+    @Override
+    protected boolean canRecomputeLocation() {
+        return false;
+    }
+
+    @Override
+    public void reset(InputStream in) throws IOException {
+        throw new UnsupportedOperationException("Non-blocking parser is fed with data");
+    }
+
+    @Override
+    public void reset(ByteBuffer data) throws IOException {
+        throw new UnsupportedOperationException("Non-blocking parser is fed with data");
+    }
+
+    @Override
+    public void reset(Path path) throws IOException {
+        throw new UnsupportedOperationException("Non-blocking parser is fed with data");
+    }
+
+    @Override
+    public NonBlockingInputFeeder getNonBlockingInputFeeder() {
+        return this;
+    }
+
+    @Override
+    public boolean needMoreInput() {
+        return !_endOfInput && (_currToken == JsonToken.NOT_AVAILABLE || _inputPtr >= _inputEnd);
+    }
+
+    /**
+     * Adds more data to parse. Unlike with Jackson's parser, the data may be fed even if previous chunk was not
+     * consumed yet.
+     * @param data
+     * @param offset
+     * @param end
+     * @throws IOException
+     */
+    @Override
+    public void feedInput(byte[] data, int offset, int end) throws IOException {
+        if (_endOfInput) {
+            _reportError("Already closed, can not feed more input");
+        }
+        if (end < offset) {
+            _reportError("Input end (%d) may not be before start (%d)", end, offset);
+        }
+        int keep = _inputEnd - _inputPtr;
+        int len = end - offset;
+        if (keep + len > _inputBytes.length) {
+            byte[] bigger = new byte[Math.max(keep + len, _inputBytes.length << 1)];
+            System.arraycopy(_inputBytes, _inputPtr, bigger, 0, keep);
+            _inputBytes = bigger;
+            _input = ByteBuffer.wrap(_inputBytes);
+        } else if (_inputPtr > 0 && keep > 0) {
+            System.arraycopy(_inputBytes, _inputPtr, _inputBytes, 0, keep);
+        }
+        _currInputProcessed += _inputPtr;
+        _currInputRowStart -= _inputPtr;
+        _inputPtr = 0;
+        System.arraycopy(data, offset, _inputBytes, keep, len);
+        _inputEnd = keep + len;
+    }
+
+    @Override
+    public void endOfInput() {
+        _endOfInput = true;
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        if (_currToken == JsonToken.NOT_AVAILABLE) {
+            _currToken = _pendingToken;
+            _pendingToken = null;
+        }
+        if (!_bomChecked) {
+            if (_inputEnd - _inputPtr < 3 && !_endOfInput) {
+                // can't tell yet
+                return _currToken = JsonToken.NOT_AVAILABLE;
+            }
+            skipBom();
+            _bomChecked = true;
+        }
+        if (!_endOfInput && !lexemesBuffered()) {
+            _pendingToken = _currToken;
+            return _currToken = JsonToken.NOT_AVAILABLE;
+        }
+        saveState();
+        _underflow = false;
+        JsonToken t;
+        try {
+            t = super.nextToken();
+        } catch (JsonProcessingException e) {
+            if (!_underflow) {
+                throw e;
+            }
+            t = null;
+        }
+        if (_underflow) {
+            // shouldn't happen after lexemesBuffered(), but the token can still be parsed again with more data
+            restoreState();
+            _pendingToken = _currToken;
+            return _currToken = JsonToken.NOT_AVAILABLE;
+        }
+        return t;
+    }
+
+    /**
+     * Checks (without consuming anything) whether the buffer contains {@link #LOOKAHEAD} complete lexemes. Name or
+     * value is complete when a delimiter follows, comment - when end of line follows. Quotes and escapes are
+     * tracked the same way as by the parser, so the lexemes never end before parser's ones.
+     * @return
+     */
+    private boolean lexemesBuffered() {
+        byte[] buf = _inputBytes;
+        int ptr = _inputPtr;
+        int end = _inputEnd;
+        int lexemes = 0;
+        while (ptr < end) {
+            int c = buf[ptr] & 0xFF;
+            if (c == '#') {
+                while (ptr < end && buf[ptr] != '\n' && buf[ptr] != '\r') {
+                    ptr++;
+                }
+                if (ptr == end) {
+                    return false;
+                }
+            } else if (c <= ' ') {
+                ptr++;
+            } else if (c == '{' || c == '}' || c == '=' || c == '<' || c == '>') {
+                ptr++;
+                if (++lexemes == LOOKAHEAD) {
+                    return true;
+                }
+            } else {
+                boolean quoted = false;
+                boolean escape = false;
+                for (; ptr < end; ptr++) {
+                    c = buf[ptr] & 0xFF;
+                    if (c == '\\') {
+                        escape = true;
+                        continue;
+                    }
+                    if (c == '"' && !escape) {
+                        quoted = !quoted;
+                    } else if (!quoted && (c <= ' ' || c == '{' || c == '}' || c == '=' || c == '<' || c == '>' || c == '#')) {
+                        break;
+                    }
+                    escape = false;
+                }
+                if (ptr == end) {
+                    return false;
+                }
+                if (++lexemes == LOOKAHEAD) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Filtering may skip many tokens in single {@link #nextToken()} call, which can't be repeated after getting
+     * more input.
+     * @param filter
+     */
+    @Override
+    public void setFilter(Hoi4DbPathFilter filter) {
+        throw new UnsupportedOperationException("Filtering is not supported by non-blocking parser");
+    }
+
+    /**
+     * Scope is skipped token by token (like {@link com.fasterxml.jackson.core.base.ParserMinimalBase} does), so
+     * it works when entire scope is already fed (or input is ended). Running out of fed data in the middle of the
+     * scope is reported as an error - skipping can't be continued after getting more input.
+     * @return
+     */
+    @Override
+    public JsonParser skipChildren() throws IOException {
+        if (_currToken != JsonToken.START_OBJECT && _currToken != JsonToken.START_ARRAY) {
+            return this;
+        }
+        int open = 1;
+        while (true) {
+            JsonToken t = nextToken();
+            if (t == null) {
+                return this;
+            }
+            if (t == JsonToken.NOT_AVAILABLE) {
+                _reportError("Can not skip children, scope is not fully available - feed more input before skipping");
+            }
+            if (t.isStructStart()) {
+                open++;
+            } else if (t.isStructEnd() && --open == 0) {
+                return this;
+            }
+        }
+    }
+
+    @Override
+    protected boolean thereIsMore() {
+        if (_inputPtr < _inputEnd) {
+            return true;
+        }
+        _underflow = !_endOfInput;
+        return false;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed number of slots for objects to reuse (buffers, parsers). Objects are taken and returned with CAS
+ * operations only - there are no locks or thread locals, so the slots may be used from any number of (virtual)
+ * threads.
+ * @param <T>
+ */
+final class Hoi4DbObjectPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    // slot to start searching from - so concurrent threads don't compete for the first slots
+    private final AtomicInteger next = new AtomicInteger();
+
+    Hoi4DbObjectPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity should be positive, was " + capacity);
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Takes an object from the pool.
+     * @return {@code null} if the pool is empty
+     */
+    T poll() {
+        int capacity = slots.length();
+        int start = next.getAndIncrement();
+        for (int i = 0; i < capacity; i++) {
+            int slot = Math.floorMod(start + i, capacity);
+            if (slots.get(slot) != null) {
+                T object = slots.getAndSet(slot, null);
+                if (object != null) {
+                    return object;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an object to the pool.
+     * @param object
+     * @return {@code false} if the pool is full
+     */
+    boolean offer(T object) {
+        int capacity = slots.length();
+        int start = next.get();
+        for (int i = 0; i < capacity; i++) {
+            int slot = Math.floorMod(start + i, capacity);
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
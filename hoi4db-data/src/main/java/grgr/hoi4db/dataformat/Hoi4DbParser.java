@@ -22,52 +22,553 @@ import java.io.IOException;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Arrays;
 
-import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.FormatFeature;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.core.base.ParserBase;
 import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.core.json.JsonReadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.LETTER;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.NAME;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.NUMBER;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.SKIP;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.TYPES;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.VALUE;
+
 public class Hoi4DbParser extends ParserBase {
 
+    /**
+     * HOI4 specific parser features.
+     */
+    public enum Feature implements FormatFeature {
+
+        /**
+         * Whether rows and columns are updated while parsing (for every new line and every token). When disabled,
+         * only offsets are tracked and rows/columns are recomputed (by counting new lines from the beginning of the
+         * input) when location is requested - e.g., for error message. Start locations of scopes are not precise
+         * then. Parsers reading from {@link Reader} or {@link java.io.InputStream} always track location, because
+         * the data that was already read can't be scanned again.
+         */
+        TRACK_LOCATION(true),
+
+        /**
+         * Whether {@link Hoi4DbUTF8StreamParser} checks if the data is UTF-8 (has UTF-8 BOM or first block of data
+         * is valid UTF-8). If not, the data is decoded as Windows-1252 (used by some older game and mod files).
+         * When disabled, data is always decoded as UTF-8.
+         */
+        DETECT_ENCODING(true);
+
+        private final boolean _defaultState;
+        private final int _mask;
+
+        Feature(boolean defaultState) {
+            _defaultState = defaultState;
+            _mask = 1 << ordinal();
+        }
+
+        public static int collectDefaults() {
+            int flags = 0;
+            for (Feature f : values()) {
+                if (f.enabledByDefault()) {
+                    flags |= f.getMask();
+                }
+            }
+            return flags;
+        }
+
+        @Override
+        public boolean enabledByDefault() {
+            return _defaultState;
+        }
+
+        @Override
+        public int getMask() {
+            return _mask;
+        }
+
+        @Override
+        public boolean enabledIn(int flags) {
+            return (flags & _mask) != 0;
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(Hoi4DbParser.class);
 
-    private static final char[] CHARS_NAME = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_".toCharArray();
+    private static final double[] POWERS_OF_TEN = new double[] {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
 
     protected boolean docStart = true;
 
+    // enabled Feature flags
+    protected int _formatFeatures = Feature.collectDefaults();
+
+    // whether rows and columns are updated while parsing - see Feature.TRACK_LOCATION
+    protected boolean _trackLocation = true;
+
     private Reader reader;
     private boolean bomRead;
 
-    // to read data from Reader
+    // to read data from Reader (or passed directly as char[])
     protected char[] _inputBuffer;
 
+    // whether _inputBuffer comes from IOContext (or _bufferPool) and should be released
+    private boolean _bufferRecyclable;
+
+    // pool of read buffers of the factory - IOContext is used if null
+    protected final Hoi4DbBufferPool _bufferPool;
+
+    // pool to return this parser to when it's closed - see Hoi4DbFactory.parserFor()
+    Hoi4DbObjectPool<Hoi4DbParser> _parserPool;
+
+    // source of the data passed to reset() - IOContext's source is used if null
+    private Object _sourceRef;
+
+    // _parsingContext is null after the end of the root scope
+    private final JsonReadContext _rootContext;
+
+    // canonical field names
+    protected final Hoi4DbSymbolTable _symbols;
+
+    // canonical String values (not longer than _maxValueLength) - null if values are not deduplicated
+    private Hoi4DbSymbolTable _values;
+    private int _maxValueLength;
+
     // Name, which turned out to be field name of anonymous root scope instead of the scope name itself
     private String _currentName;
 
-    // Usually a token (field name) which may turn out to be array value instead
+    // Field name to use with _nextToken
     private String _nextName;
+
+    // whether current START_OBJECT/START_ARRAY was created for '{' - such scope can be skipped by counting braces
+    private boolean _scopeStart;
+
+    // paths to read - other fields are skipped
+    private Hoi4DbPathFilter _filter;
+    // filters of the scopes from the root to the current one
+    private Hoi4DbPathFilter[] _filterStack = new Hoi4DbPathFilter[16];
+    private int _filterDepth;
+    // filter for the value of recent FIELD_NAME
+    private Hoi4DbPathFilter _fieldFilter;
+
     // TO store next value when detecting what the scope is
     private Object _nextValue;
 
-    public Hoi4DbParser(IOContext ctxt, int features, Reader reader) {
-        super(ctxt, features);
+    // state remembered by saveState() - contexts from current to root with their names, values and entry counts
+    private JsonReadContext[] _savedContexts = new JsonReadContext[16];
+    private String[] _savedNames = new String[16];
+    private Object[] _savedValues = new Object[16];
+    private int[] _savedCounts = new int[16];
+    private int _savedDepth;
+    private boolean _savedScopeStart;
+    private JsonToken _savedToken;
+    private JsonToken _savedNextToken;
+    private String _savedNextName;
+    private Object _savedNextValue;
+    private boolean _savedDocStart;
+    private int _savedInputPtr;
+    private int _savedInputRow;
+    private int _savedInputRowStart;
+    private long _savedTokenInputTotal;
+    private int _savedTokenInputRow;
+    private int _savedTokenInputCol;
+
+    public Hoi4DbParser(IOContext ctxt, int features, Reader reader, Hoi4DbSymbolTable symbols) {
+        this(ctxt, features, reader, symbols, null);
+    }
+
+    /**
+     * Parser reading from {@link Reader} into a buffer taken from the pool.
+     * @param ctxt
+     * @param features
+     * @param reader
+     * @param symbols
+     * @param bufferPool {@code null} to use buffer from {@link IOContext}
+     */
+    public Hoi4DbParser(IOContext ctxt, int features, Reader reader, Hoi4DbSymbolTable symbols,
+            Hoi4DbBufferPool bufferPool) {
+        this(ctxt, features, symbols, bufferPool);
         this.reader = reader;
-        _inputBuffer = ctxt.allocTokenBuffer();
+        _inputBuffer = bufferPool != null ? bufferPool.allocChars() : ctxt.allocTokenBuffer();
+        _bufferRecyclable = true;
+    }
+
+    /**
+     * Parser for data available in single {@code char[]} - there's no {@link Reader} to read from.
+     * @param ctxt
+     * @param features
+     * @param data
+     * @param offset
+     * @param len
+     * @param recyclable whether {@code data} comes from {@link IOContext} and should be released
+     * @param symbols
+     */
+    public Hoi4DbParser(IOContext ctxt, int features, char[] data, int offset, int len, boolean recyclable,
+            Hoi4DbSymbolTable symbols) {
+        this(ctxt, features, symbols, null);
+        _inputBuffer = data;
+        _bufferRecyclable = recyclable;
+        _inputPtr = offset;
+        _inputEnd = offset + len;
+        // so that offsets and columns are relative to the passed data
+        _currInputProcessed = -offset;
+        _currInputRowStart = offset;
+        skipBom();
+    }
+
+    /**
+     * Constructor for subclasses that don't read from {@link Reader} and manage their own input buffers.
+     * @param ctxt
+     * @param features
+     * @param symbols child symbol table for this parser only
+     * @param bufferPool pool of read buffers (may be {@code null})
+     */
+    protected Hoi4DbParser(IOContext ctxt, int features, Hoi4DbSymbolTable symbols, Hoi4DbBufferPool bufferPool) {
+        super(ctxt, features);
+        _symbols = symbols;
+        _bufferPool = bufferPool;
+        _rootContext = _parsingContext;
     }
 
     @Override
     protected void _closeInput() throws IOException {
-        reader.close();
-        reader = null;
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
     }
 
     @Override
     protected void _releaseBuffers() throws IOException {
-        _ioContext.releaseTokenBuffer(_inputBuffer);
+        // text buffer and name copy buffer go back to the recycler (also for pooled parsers)
+        super._releaseBuffers();
+        releaseSymbols();
+        if (_parserPool == null) {
+            releaseReadBuffers();
+        }
+    }
+
+    private void releaseSymbols() {
+        _symbols.release();
+        if (_values != null) {
+            _values.release();
+        }
+    }
+
+    /**
+     * Sets table of canonical String values - see {@link Hoi4DbFactory#setValueDeduplication(int)}.
+     * @param root root table of the factory (this parser gets own child table, unless it already has one),
+     * {@code null} to create new String for each value
+     * @param maxLength longer values are not deduplicated
+     */
+    void setValueTable(Hoi4DbSymbolTable root, int maxLength) {
+        if (_values != null && !_values.isChildOf(root)) {
+            _values.release();
+            _values = null;
+        }
+        if (_values == null && root != null) {
+            _values = root.makeChild();
+        }
+        _maxValueLength = maxLength;
+    }
+
+    /**
+     * Releases buffers used to read the data. Pooled parser keeps them for next input.
+     */
+    protected void releaseReadBuffers() {
+        if (_bufferRecyclable && _inputBuffer != null) {
+            if (_bufferPool != null) {
+                _bufferPool.releaseChars(_inputBuffer);
+            } else {
+                _ioContext.releaseTokenBuffer(_inputBuffer);
+            }
+        }
+        _inputBuffer = null;
+    }
+
+    /**
+     * Closes the input. Parser obtained from {@link Hoi4DbFactory#parserFor(Reader)} is returned to the pool then
+     * and must not be used any more.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        super.close();
+        if (_parserPool != null && !_parserPool.offer(this)) {
+            releaseReadBuffers();
+        }
+    }
+
+    /**
+     * Prepares this parser to read from another {@link Reader}. Current input is closed, but buffers, parsing
+     * contexts and symbol table are kept, so many small files may be read with single parser. Features are
+     * kept too, while path filter is cleared.
+     * Supported only by parsers reading characters - {@link Hoi4DbUTF8StreamParser byte parsers} throw
+     * {@link UnsupportedOperationException} and are reset with their own {@code reset(InputStream)},
+     * {@code reset(ByteBuffer)} or {@code reset(Path)} methods.
+     * @param reader
+     * @throws IOException
+     * @throws UnsupportedOperationException if this parser reads bytes
+     */
+    public void reset(Reader reader) throws IOException {
+        resetState(reader);
+        this.reader = reader;
+        bomRead = false;
+        if (_inputBuffer == null || !_bufferRecyclable) {
+            _inputBuffer = _bufferPool != null ? _bufferPool.allocChars() : _ioContext.allocTokenBuffer();
+            _bufferRecyclable = true;
+        }
+        configureFeatures();
+    }
+
+    /**
+     * Closes current input (if not closed yet) and brings the parser back to the state before reading first
+     * token.
+     * @param sourceRef source of new data to show in locations
+     * @throws IOException
+     */
+    protected void resetState(Object sourceRef) throws IOException {
+        if (!_closed) {
+            _closeInput();
+            releaseSymbols();
+        }
+        // names found by other parsers since this one was created
+        _symbols.refresh();
+        _closed = false;
+        _sourceRef = sourceRef;
+
+        _currToken = null;
+        _lastClearedToken = null;
+        _nextToken = null;
+        // child contexts of the root are reused too
+        _rootContext.setCurrentName(null);
+        _rootContext.setCurrentValue(null);
+        _parsingContext = _rootContext;
+        _textBuffer.resetWithEmpty();
+        _numTypesValid = NR_UNKNOWN;
+
+        _inputPtr = 0;
+        _inputEnd = 0;
+        _currInputProcessed = 0L;
+        _currInputRow = 1;
+        _currInputRowStart = 0;
+        _tokenInputTotal = 0L;
+        _tokenInputRow = 1;
+        _tokenInputCol = 0;
+
+        docStart = true;
+        _currentName = null;
+        _nextName = null;
+        _nextValue = null;
+        _scopeStart = false;
+        _filter = null;
+        Arrays.fill(_filterStack, 0, _filterDepth, null);
+        _filterDepth = 0;
+        _fieldFilter = null;
+    }
+
+    IOContext getIOContext() {
+        return _ioContext;
+    }
+
+    @Override
+    protected Object _getSourceReference() {
+        return _sourceRef != null ? _sourceRef : super._getSourceReference();
+    }
+
+    /**
+     * Remembers the state of the parser, so {@link #nextToken()} may be started again (after
+     * {@link #restoreState()}) for example when there was not enough data to finish a token.
+     * Position in the input is remembered relative to the current buffer.
+     */
+    protected void saveState() {
+        int depth = 0;
+        for (JsonReadContext ctx = _parsingContext; ctx != null; ctx = ctx.getParent()) {
+            if (depth == _savedContexts.length) {
+                _savedContexts = Arrays.copyOf(_savedContexts, depth << 1);
+                _savedNames = Arrays.copyOf(_savedNames, depth << 1);
+                _savedValues = Arrays.copyOf(_savedValues, depth << 1);
+                _savedCounts = Arrays.copyOf(_savedCounts, depth << 1);
+            }
+            _savedContexts[depth] = ctx;
+            _savedNames[depth] = ctx.getCurrentName();
+            _savedValues[depth] = ctx.getCurrentValue();
+            _savedCounts[depth] = ctx.getEntryCount();
+            depth++;
+        }
+        _savedDepth = depth;
+        _savedScopeStart = _scopeStart;
+        _savedToken = _currToken;
+        _savedNextToken = _nextToken;
+        _savedNextName = _nextName;
+        _savedNextValue = _nextValue;
+        _savedDocStart = docStart;
+        _savedInputPtr = _inputPtr;
+        _savedInputRow = _currInputRow;
+        _savedInputRowStart = _currInputRowStart;
+        _savedTokenInputTotal = _tokenInputTotal;
+        _savedTokenInputRow = _tokenInputRow;
+        _savedTokenInputCol = _tokenInputCol;
+    }
+
+    /**
+     * Brings back the state remembered by {@link #saveState()}.
+     */
+    protected void restoreState() throws IOException {
+        for (int i = 0; i < _savedDepth; i++) {
+            JsonReadContext ctx = _savedContexts[i];
+            if (ctx.getEntryCount() != _savedCounts[i] && ctx.getParent() != null) {
+                // entry count can only grow - context is reset by its parent (it's the parent's reused child) and
+                // counted again
+                JsonLocation start = ctx.getStartLocation(null);
+                JsonReadContext reset = ctx.inArray()
+                        ? ctx.getParent().createChildArrayContext(start.getLineNr(), start.getColumnNr())
+                        : ctx.getParent().createChildObjectContext(start.getLineNr(), start.getColumnNr());
+                for (int n = 0; n < _savedCounts[i]; n++) {
+                    reset.expectComma();
+                }
+            }
+            ctx.setCurrentName(_savedNames[i]);
+            ctx.setCurrentValue(_savedValues[i]);
+        }
+        _parsingContext = _savedContexts[0];
+        Arrays.fill(_savedContexts, 0, _savedDepth, null);
+        Arrays.fill(_savedValues, 0, _savedDepth, null);
+        _currToken = _savedToken;
+        _nextToken = _savedNextToken;
+        _nextName = _savedNextName;
+        _nextValue = _savedNextValue;
+        docStart = _savedDocStart;
+        _scopeStart = _savedScopeStart;
+        _inputPtr = _savedInputPtr;
+        _currInputRow = _savedInputRow;
+        _currInputRowStart = _savedInputRowStart;
+        _tokenInputTotal = _savedTokenInputTotal;
+        _tokenInputRow = _savedTokenInputRow;
+        _tokenInputCol = _savedTokenInputCol;
+    }
+
+    @Override
+    public int getFormatFeatures() {
+        return _formatFeatures;
+    }
+
+    /**
+     * Changes {@link Feature HOI4 features}. Should be called before reading first token.
+     * @param values
+     * @param mask
+     * @return
+     */
+    @Override
+    public JsonParser overrideFormatFeatures(int values, int mask) {
+        _formatFeatures = (_formatFeatures & ~mask) | (values & mask);
+        configureFeatures();
+        return this;
+    }
+
+    /**
+     * Applies enabled features to the state used while parsing current input (e.g., whether location is tracked).
+     */
+    protected void configureFeatures() {
+        _trackLocation = Feature.TRACK_LOCATION.enabledIn(_formatFeatures) || !canRecomputeLocation();
+    }
+
+    public JsonParser enable(Feature f) {
+        return overrideFormatFeatures(f.getMask(), f.getMask());
+    }
+
+    public JsonParser disable(Feature f) {
+        return overrideFormatFeatures(0, f.getMask());
+    }
+
+    public boolean isEnabled(Feature f) {
+        return f.enabledIn(_formatFeatures);
+    }
+
+    /**
+     * Whether entire input is available in current buffer, so rows and columns may be computed from the offset.
+     * @return
+     */
+    protected boolean canRecomputeLocation() {
+        return reader == null;
+    }
+
+    @Override
+    public JsonLocation getTokenLocation() {
+        if (!_trackLocation) {
+            recomputeLocation();
+        }
+        return super.getTokenLocation();
+    }
+
+    @Override
+    public JsonLocation getCurrentLocation() {
+        if (!_trackLocation) {
+            recomputeLocation();
+        }
+        return super.getCurrentLocation();
+    }
+
+    /**
+     * Offset (in bytes or chars) of the first byte (or char) not consumed yet - e.g., right after
+     * <code>}</code> when a scope was {@link #skipChildren() skipped}. Unlike {@link #getCurrentLocation()},
+     * rows and columns are never recomputed, so it's cheap even without {@link Feature#TRACK_LOCATION}.
+     * @return
+     */
+    public long getInputOffset() {
+        return _currInputProcessed + _inputPtr;
+    }
+
+    /**
+     * Character (or byte) of current buffer at given index - used only to recompute location.
+     * @param index
+     * @return
+     */
+    protected int inputAt(int index) {
+        return _inputBuffer[index];
+    }
+
+    /**
+     * When location isn't tracked while parsing, sets rows and columns of current token and current position by
+     * counting new lines from the beginning of the input (which is entirely available in current buffer).
+     */
+    private void recomputeLocation() {
+        int start = (int) -_currInputProcessed;
+        int tokenPtr = (int) (_tokenInputTotal - _currInputProcessed);
+        int end = _inputPtr;
+        int row = 1;
+        int rowStart = start;
+        int tokenRow = 1;
+        int tokenRowStart = start;
+        for (int i = start; i < end; i++) {
+            if (i == tokenPtr) {
+                tokenRow = row;
+                tokenRowStart = rowStart;
+            }
+            int c = inputAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == _inputEnd || inputAt(i + 1) != '\n')) {
+                row++;
+                rowStart = i + 1;
+            }
+        }
+        if (tokenPtr >= end) {
+            tokenRow = row;
+            tokenRowStart = rowStart;
+        }
+        _currInputRow = row;
+        _currInputRowStart = rowStart;
+        _tokenInputRow = tokenRow;
+        _tokenInputCol = tokenPtr - tokenRowStart;
     }
 
     @Override
@@ -80,10 +581,119 @@ public class Hoi4DbParser extends ParserBase {
 
     }
 
+    /**
+     * Sets paths to read - other fields are skipped. Should be called before reading first token.
+     * @param filter {@code null} to read everything
+     */
+    public void setFilter(Hoi4DbPathFilter filter) {
+        if (_currToken != null || !docStart) {
+            throw new IllegalStateException("Filter should be set before reading first token");
+        }
+        _filter = filter;
+    }
+
+    public Hoi4DbPathFilter getFilter() {
+        return _filter;
+    }
+
     @Override
     public JsonToken nextToken() throws IOException {
+        if (_filter == null) {
+            return nextUnfilteredToken();
+        }
+        while (true) {
+            JsonToken t = nextUnfilteredToken();
+            if (t == null) {
+                return null;
+            }
+            Hoi4DbPathFilter current = _filterDepth == 0 ? _filter : _filterStack[_filterDepth - 1];
+            switch (t) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    // scope of the field, array item or the root
+                    pushFilter(_fieldFilter != null ? _fieldFilter : current);
+                    _fieldFilter = null;
+                    return t;
+                case END_OBJECT:
+                case END_ARRAY:
+                    _filterStack[--_filterDepth] = null;
+                    return t;
+                case FIELD_NAME:
+                    if (current.includesAll()) {
+                        return t;
+                    }
+                    Hoi4DbPathFilter f = current.includeField(_parsingContext.getCurrentName());
+                    if (f != null) {
+                        _fieldFilter = f;
+                        return t;
+                    }
+                    // skip the value without passing any tokens
+                    if (nextUnfilteredToken().isStructStart()) {
+                        skipUnfiltered();
+                    }
+                    break;
+                default:
+                    _fieldFilter = null;
+                    return t;
+            }
+        }
+    }
+
+    private void pushFilter(Hoi4DbPathFilter f) {
+        if (_filterDepth == _filterStack.length) {
+            _filterStack = Arrays.copyOf(_filterStack, _filterDepth << 1);
+        }
+        _filterStack[_filterDepth++] = f;
+    }
+
+    /**
+     * Skips current scope without checking (and changing) the filter.
+     */
+    private void skipUnfiltered() throws IOException {
+        if (_scopeStart) {
+            skipScopeTokens();
+            return;
+        }
+        int open = 1;
+        while (open > 0) {
+            JsonToken t = nextUnfilteredToken();
+            if (t == null) {
+                return;
+            }
+            if (t.isStructStart()) {
+                open++;
+            } else if (t.isStructEnd()) {
+                open--;
+            }
+        }
+    }
+
+    /**
+     * Returns next token - without checking {@link Hoi4DbPathFilter}. Array items and fields are counted, so
+     * {@link #getCurrentIndex()} works like with JSON parser.
+     * @return
+     * @throws IOException
+     */
+    protected JsonToken nextUnfilteredToken() throws IOException {
+        JsonReadContext scope = _parsingContext;
+        boolean fieldValue = _currToken == JsonToken.FIELD_NAME;
+        JsonToken t = readToken();
+        if (t == JsonToken.FIELD_NAME) {
+            // field of named object inside an array doesn't have own context
+            if (_parsingContext.inObject()) {
+                _parsingContext.expectComma();
+            }
+        } else if (t != null && t != JsonToken.NOT_AVAILABLE && !t.isStructEnd() && !fieldValue && scope.inArray()) {
+            // value or scope started in an array
+            scope.expectComma();
+        }
+        return t;
+    }
+
+    private JsonToken readToken() throws IOException {
         int c;
         Hoi4Token ht;
+        _scopeStart = false;
         if (docStart) {
             docStart = false;
             _parsingContext.setCurrentName("ROOT");
@@ -115,6 +725,15 @@ public class Hoi4DbParser extends ParserBase {
                 return _currToken;
             }
 
+            if (_currToken == null) {
+                // token may have been cleared (e.g., by ObjectMapper after reading a value) - we still need it
+                // to know where we are
+                if (_lastClearedToken == null) {
+                    return null;
+                }
+                _currToken = _lastClearedToken;
+            }
+
             switch (_currToken) {
                 case START_OBJECT:
                     c = skipWsAndComments();
@@ -169,6 +788,7 @@ public class Hoi4DbParser extends ParserBase {
                             // empty array
                             _currToken = JsonToken.START_ARRAY;
                             _parsingContext = _parsingContext.createChildArrayContext(_tokenInputRow, _tokenInputCol);
+                            _scopeStart = true;
                             return _currToken;
                         }
                         String currentName = _parsingContext.getCurrentName();
@@ -189,10 +809,11 @@ public class Hoi4DbParser extends ParserBase {
                             // token turned out to be an array item, so there's a value to parse
                             _currToken = JsonToken.START_ARRAY;
                             _parsingContext = _parsingContext.createChildArrayContext(_tokenInputRow, _tokenInputCol);
-                            _nextToken = parseValue(_nextName);
+                            _nextToken = parseValue(-1);
                             _nextValue = _parsingContext.getCurrentValue();
                         }
                         _parsingContext.setCurrentValue(null);
+                        _scopeStart = true;
                         return _currToken;
                     } else {
                         // the value should be primitive. Don't distinguish string valus and
@@ -206,6 +827,7 @@ public class Hoi4DbParser extends ParserBase {
                 case END_OBJECT:
                 case END_ARRAY:
                 case VALUE_STRING:
+                case VALUE_EMBEDDED_OBJECT:
                 case VALUE_NUMBER_FLOAT:
                 case VALUE_NUMBER_INT:
                 case VALUE_TRUE:
@@ -251,7 +873,7 @@ public class Hoi4DbParser extends ParserBase {
                         ht = findToken();
                         if (ht == Hoi4Token.ITEM) {
                             // after finding an item, we already have it parsed
-                            _currToken = parseValue(_nextName);
+                            _currToken = parseValue(-1);
                         } else if (ht == Hoi4Token.FIELD) {
                             _currToken = JsonToken.FIELD_NAME;
                             if (_parsingContext.inArray()) {
@@ -274,19 +896,108 @@ public class Hoi4DbParser extends ParserBase {
         }
     }
 
+    /**
+     * Scopes started with <code>{</code> are skipped by counting braces (taking care of quoted strings and
+     * comments) - without creating any tokens. Lookahead (e.g., first field name) is discarded.
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public JsonParser skipChildren() throws IOException {
+        if (!_scopeStart) {
+            return super.skipChildren();
+        }
+        skipScopeTokens();
+        if (_filter != null) {
+            _filterStack[--_filterDepth] = null;
+        }
+        return this;
+    }
+
+    /**
+     * Skips scope started with <code>{</code>, so current token is END_OBJECT/END_ARRAY of this scope.
+     */
+    private void skipScopeTokens() throws IOException {
+        _scopeStart = false;
+        skipScope();
+
+        _nextToken = null;
+        _nextName = null;
+        _nextValue = null;
+        _parsingContext.setCurrentValue(null);
+        if (_parsingContext.inObject()) {
+            _currToken = JsonToken.END_OBJECT;
+            if (_parsingContext.getParent().inArray()) {
+                // pop extra object created for non-anonymous object being an array item
+                _nextToken = JsonToken.END_OBJECT;
+                _parsingContext.getParent().setCurrentName(null);
+            }
+        } else {
+            _currToken = JsonToken.END_ARRAY;
+        }
+        _parsingContext = _parsingContext.clearAndGetParent();
+    }
+
+    /**
+     * Moves past <code>}</code> matching already consumed <code>{</code>.
+     */
+    protected void skipScope() throws IOException {
+        final boolean track = _trackLocation;
+        int depth = 1;
+        boolean inString = false;
+        boolean escape = false;
+        boolean inComment = false;
+        while (thereIsMore()) {
+            char[] buf = _inputBuffer;
+            int ptr = _inputPtr;
+            int end = _inputEnd;
+            while (ptr < end) {
+                char c = buf[ptr++];
+                if (c == '\n' || c == '\r') {
+                    if (c == '\n' && track) {
+                        newLine(ptr);
+                    }
+                    inComment = false;
+                    escape = false;
+                } else if (inComment) {
+                    // skip
+                } else if (inString) {
+                    if (c == '"' && !escape) {
+                        inString = false;
+                    }
+                    escape = c == '\\' && !escape;
+                } else if (c == '"') {
+                    inString = true;
+                    escape = false;
+                } else if (c == '#') {
+                    inComment = true;
+                } else if (c == '{') {
+                    depth++;
+                } else if (c == '}' && --depth == 0) {
+                    _inputPtr = ptr;
+                    return;
+                }
+            }
+            _inputPtr = ptr;
+        }
+        _reportInvalidEOF(": reached end of file while skipping a scope", _currToken);
+    }
+
     /**
      * Ensures that {@link #_inputBuffer} has something to read and that {@link #_inputPtr} is smaller than {@link #_inputEnd}.
      * If there's nothing more, {@link #_inputPtr} will be equal to {@link #_inputEnd} and we'll return {@code false}.
      *
      * @return
      */
-    private boolean thereIsMore() {
+    protected boolean thereIsMore() {
         if (_inputPtr < _inputEnd) {
             return true;
         }
-        if (isClosed()) {
+        if (isClosed() || reader == null) {
             return false;
         }
+        // last name or value may still share the buffer we're going to overwrite
+        _textBuffer.ensureNotShared();
         // can we read more?
         try {
             int count = reader.read(_inputBuffer, 0, _inputBuffer.length);
@@ -294,23 +1005,12 @@ public class Hoi4DbParser extends ParserBase {
                 _inputPtr = 0;
                 _inputEnd = count;
                 if (!bomRead) {
-                    if (_inputBuffer[0] == 0xEF) {
-                        // could be UTF-8 BOM
-                        if (count < 3) {
-                            throw new IOException("Found illegal Byte Order Mark");
-                        }
-                        if (!(_inputBuffer[1] == 0xBB && _inputBuffer[2] == 0xBF)) {
-                            throw new IOException("Found illegal Byte Order Mark, expected UTF-8 one");
-                        }
-                        _inputPtr += 3;
-                    } else if (_inputBuffer[0] == '\uFEFF') {
-                        _inputPtr++;
-                    }
-                    bomRead = true;
+                    skipBom();
                 }
                 return true;
             }
-            close();
+            // parser itself is closed (and buffers released) by the caller
+            _closeInput();
 
             if (count == 0) {
                 throw new IOException("Reader returned 0 characters");
@@ -328,43 +1028,58 @@ public class Hoi4DbParser extends ParserBase {
      * @return
      * @throws IOException
      */
-    private int skipWsAndComments() throws IOException {
+    protected int skipWsAndComments() throws IOException {
         updateLocation();
+        final boolean track = _trackLocation;
         boolean inComment = false;
         boolean hadCr = false;
         while (thereIsMore()) {
-            while (_inputPtr < _inputEnd) {
-                int c = _inputBuffer[_inputPtr++];
-                if (hadCr && c != '\n') {
-                    // Mac
-                    ++_tokenInputRow;
-                    ++_currInputRow;
-                    _tokenInputCol = 0;
-                    _currInputRowStart = _inputPtr;
+            char[] buf = _inputBuffer;
+            int ptr = _inputPtr;
+            int end = _inputEnd;
+            while (ptr < end) {
+                int c = buf[ptr++];
+                if (hadCr) {
+                    hadCr = false;
+                    if (c != '\n') {
+                        // Mac
+                        newLine(ptr);
+                    }
                 }
-                if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
-                    if (c == '\r' || c == '\n') {
-                        inComment = false;
+                if (c >= 128 || (TYPES[c] & SKIP) == 0) {
+                    if (!inComment) {
+                        _inputPtr = ptr - 1;
+                        return c;
                     }
-                    if (c == '\n') {
-                        ++_tokenInputRow;
-                        ++_currInputRow;
-                        _tokenInputCol = 0;
-                        _currInputRowStart = _inputPtr;
+                } else if (c == '\n') {
+                    inComment = false;
+                    if (track) {
+                        newLine(ptr);
                     }
-                    hadCr = c == '\r';
-                } else if (c == '#' && !inComment) {
+                } else if (c == '\r') {
+                    inComment = false;
+                    hadCr = track;
+                } else if (c == '#') {
                     inComment = true;
-                } else if (!inComment) {
-                    --_inputPtr;
-                    return c;
                 }
             }
+            _inputPtr = ptr;
         }
 
         return -1;
     }
 
+    /**
+     * Marks start of new line at given position of current buffer.
+     * @param rowStart
+     */
+    protected final void newLine(int rowStart) {
+        ++_tokenInputRow;
+        ++_currInputRow;
+        _tokenInputCol = 0;
+        _currInputRowStart = rowStart;
+    }
+
     /**
      * Find a {@link Hoi4Token}. We'll check if it's field name or array item. This method is not for parsing values
      * of fields. However it may collect a name that will turn out to be array item (thus - a value to parse later).
@@ -373,9 +1088,57 @@ public class Hoi4DbParser extends ParserBase {
      */
     private Hoi4Token findToken() throws IOException {
         updateLocation();
-        boolean crossBufferNeeded = false;
+        readName();
+
+        // check what's the kind of token:
+        // - field name must be followed by '='
+        // - array element must be followed by whitespace, next name or '}' - in case of array, token is actually
+        //   a value and its name should be that of parent scope
+
+        int c = skipWsAndComments();
+        if (c == '=') {
+            // we can safely say that this token is a name
+            _parsingContext.setCurrentName(symbol());
+            ++_inputPtr;
+            skipWsAndComments();
+            return Hoi4Token.FIELD;
+        }
+        if (c == '>' || c == '<') {
+            // special case - it's an expression that we'll treat as part of the value. We have a field, but will
+            // include the operator in the value
+            _parsingContext.setCurrentName(symbol());
+            return Hoi4Token.FIELD;
+        }
+        if (c == '}' || c == '"' || nameChar(c) || letter(c)) {
+            // name (still available in _textBuffer) turns out to be a value - to be parsed later
+            return Hoi4Token.ITEM;
+        }
+
+        if (c == -1 && _parsingContext.getParent() == null) {
+            return null;
+        }
+
+        _reportUnexpectedChar(c, "Invalid character after field name");
+
+        return Hoi4Token.UNKNOWN;
+    }
+
+    /**
+     * Returns canonical instance of a name collected in {@link #_textBuffer}.
+     * @return
+     */
+    private String symbol() {
+        return _symbols.findSymbol(_textBuffer.getTextBuffer(), _textBuffer.getTextOffset(), _textBuffer.size());
+    }
+
+    /**
+     * Collects a name at current position into {@link #_textBuffer}. It may be a field name or array item. Name may
+     * be quoted (common/decisions/MEX.txt: {@code "PAN" = {...}}) - quotes are part of collected name.
+     */
+    protected void readName() throws IOException {
         boolean gotName = false;
         boolean quoted = false;
+        boolean escape = false;
 
         char[] outBuf = null;
         int outPtr = -1;
@@ -387,12 +1150,17 @@ public class Hoi4DbParser extends ParserBase {
             // iterate within single buffer
             while (_inputPtr < _inputEnd) {
                 char c = _inputBuffer[_inputPtr];
-                if (c == '"') {
-                    quoted = !quoted;
-                    _inputPtr++;
-                    continue;
+                if (c == '\\') {
+                    escape = true;
+                } else {
+                    if (c == '"' && !escape) {
+                        quoted = !quoted;
+                        _inputPtr++;
+                        continue;
+                    }
+                    escape = false;
                 }
-                if (!quoted && !nameChar(c) && !Character.isLetter(c)) {
+                if (!quoted && (c < 128 ? (TYPES[c] & (NAME | LETTER)) == 0 : !Hoi4DbCharTypes.is(c, NAME | LETTER))) {
                     // token may use '"' (common/decisions/MEX.txt: "PAN" = {...)
                     gotName = true;
                     break;
@@ -411,8 +1179,8 @@ public class Hoi4DbParser extends ParserBase {
             // after checking single buffer we may, or may not find a char marking end of token
             if (gotName) {
                 if (outBuf == null) {
-                    // simple case - extract token from current buffer
-                    _nextName = new String(_inputBuffer, start, _inputPtr - start);
+                    // simple case - token is available in current buffer
+                    _textBuffer.resetWithShared(_inputBuffer, start, _inputPtr - start);
                 }
                 break;
             } else if (outBuf == null) {
@@ -424,66 +1192,42 @@ public class Hoi4DbParser extends ParserBase {
         }
 
         if (outBuf != null) {
-            // extract token from segmented buffer
+            // token is available in segmented buffer
             _textBuffer.setCurrentLength(outPtr);
-            _nextName = new String(_textBuffer.getTextBuffer(), _textBuffer.getTextOffset(), _textBuffer.size());
+        } else if (!gotName) {
+            // EOF
+            _textBuffer.resetWithEmpty();
         }
+    }
 
-        // check what's the kind of token:
-        // - field name must be followed by '='
-        // - array element must be followed by whitespace, next name or '}' - in case of array, token is actually
-        //   a value and its name should be that of parent scope
+    /**
+     * This method progresses through buffer and tries to find a value. It updates the pointers.
+     */
+    private JsonToken parseValue() throws IOException {
+        updateLocation();
+        int operator = -1;
 
         int c = skipWsAndComments();
-        if (c == '=') {
-            // we can safely say that this token is a name
-            _parsingContext.setCurrentName(_nextName);
-            _nextName = null;
+        if (c == '>' || c == '<') {
+            operator = c;
             ++_inputPtr;
             skipWsAndComments();
-            return Hoi4Token.FIELD;
-        }
-        if (c == '>' || c == '<') {
-            // special case - it's an expression that we'll treat as part of the value. We have a field, but will
-            // include the operator in the value
-            _parsingContext.setCurrentName(_nextName);
-            _nextName = null;
-            return Hoi4Token.FIELD;
-        }
-        if (c == '}' || nameChar(c) || c == '"' || Character.isLetter(c)) {
-            // _nextName turns out to be a value - to be parsed later
-            return Hoi4Token.ITEM;
         }
 
-        if (c == -1 && _parsingContext.getParent() == null) {
-            return null;
-        }
-
-        _reportUnexpectedChar(c, "Invalid character after field name");
-
-        return Hoi4Token.UNKNOWN;
+        readValue();
+        return parseValue(operator);
     }
 
     /**
-     * This method progresses through buffer and tries to find a value. It updates the pointers.
+     * Collects raw value at current position into {@link #_textBuffer} - up to first character that can't be part
+     * of the value. Quoted values may contain whitespace.
      */
-    private JsonToken parseValue() throws IOException {
-        updateLocation();
-        boolean crossBufferNeeded = false;
-
+    protected void readValue() throws IOException {
         char[] outBuf = null;
         int outPtr = -1;
         boolean escape = false;
         boolean inString = false;
         boolean gotValue = false;
-        int operator = -1;
-
-        String raw = null;
-        if (thereIsMore() && (_inputBuffer[_inputPtr] == '>' || _inputBuffer[_inputPtr] == '<')) {
-            operator = _inputBuffer[_inputPtr];
-            ++_inputPtr;
-            skipWsAndComments();
-        }
 
         // iterate for value - even across buffers
         while (thereIsMore()) {
@@ -501,7 +1245,7 @@ public class Hoi4DbParser extends ParserBase {
                     }
                     escape = false;
                 }
-                if (!inString && !nameChar(c) && !numberChar(c) && c != '/') {
+                if (!inString && (c < 128 ? (TYPES[c] & VALUE) == 0 : !Hoi4DbCharTypes.is(c, VALUE))) {
                     // end of value. let's allow newlines inside string
                     gotValue = true;
                     --_inputPtr;
@@ -520,8 +1264,8 @@ public class Hoi4DbParser extends ParserBase {
             // after checking single buffer we may, or may not find a char marking end of value
             if (gotValue) {
                 if (outBuf == null) {
-                    // simple case - extract token from current buffer
-                    raw = new String(_inputBuffer, start, _inputPtr - start);
+                    // simple case - token is available in current buffer
+                    _textBuffer.resetWithShared(_inputBuffer, start, _inputPtr - start);
                 }
                 break;
             } else if (outBuf == null) {
@@ -534,84 +1278,248 @@ public class Hoi4DbParser extends ParserBase {
         }
 
         if (outBuf != null) {
-            // extract token from segmented buffer
+            // token is available in segmented buffer
             _textBuffer.setCurrentLength(outPtr);
-            raw = new String(_textBuffer.getTextBuffer(), _textBuffer.getTextOffset(), _textBuffer.size());
+        } else if (!gotValue) {
+            // EOF
+            _textBuffer.resetWithEmpty();
         }
-
-        return parseValue(raw, operator);
-    }
-
-    private JsonToken parseValue(String raw) throws JsonParseException {
-        return parseValue(raw, -1);
     }
 
     /**
-     * This method doesn't progress through buffer and works only on passed raw (string) value. It sets
-     * value in current parsing context;
-     * @param raw
+     * This method doesn't progress through buffer and works only on raw value collected in {@link #_textBuffer}.
+     * Numbers are only checked and remain in {@link #_textBuffer} - they're decoded when requested using one of
+     * {@code getXXXValue()} methods. Strings (without quotes) also remain in {@link #_textBuffer}. Other values
+     * are set in current parsing context.
      * @param operator if different than {@code -1}, it's an operator for a value
      * @return
      */
-    private JsonToken parseValue(String raw, int operator) throws JsonParseException {
-        // check type of value: string, boolean, bigdecimal, biginteger
-        if (raw == null) {
-            _reportError("Can't parse value");
-            return JsonToken.NOT_AVAILABLE;
+    private JsonToken parseValue(int operator) throws IOException {
+        // check type of value: string, boolean, number
+        char[] buf = _textBuffer.getTextBuffer();
+        int start = _textBuffer.getTextOffset();
+        int end = start + _textBuffer.size();
+        while (start < end && buf[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buf[end - 1] <= ' ') {
+            end--;
         }
-        raw = raw.trim();
 
-        if (raw.length() == 0) {
-            _parsingContext.setCurrentValue("");
+        if (start == end) {
+            _textBuffer.resetWithEmpty();
+            _parsingContext.setCurrentValue(null);
             return JsonToken.VALUE_STRING;
         }
 
-        char c = raw.charAt(0);
+        char c = buf[start];
         if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
-            // a number
-            try {
-                if (raw.contains(".")) {
-                    BigDecimal value = new BigDecimal(raw);
-                    _parsingContext.setCurrentValue(operator > -1 ? new ConstrainedValue((char) operator, value) : value);
-                    if (operator > -1) {
-                        return JsonToken.VALUE_STRING;
-                    } else {
-                        _numTypesValid = NR_BIGDECIMAL;
-                        _numberBigDecimal = value;
-                        return JsonToken.VALUE_NUMBER_FLOAT;
-                    }
-                } else {
-                    BigInteger value = new BigInteger(raw);
-                    _parsingContext.setCurrentValue(operator > -1 ? new ConstrainedValue((char) operator, value) : value);
-                    if (operator > -1) {
-                        return JsonToken.VALUE_STRING;
-                    } else {
-                        _numTypesValid = NR_BIGINT;
-                        _numberBigInt = value;
-                        return JsonToken.VALUE_NUMBER_INT;
-                    }
+            // a number?
+            JsonToken t = parseNumber(buf, start, end);
+            if (t != null) {
+                if (operator > -1) {
+                    _parsingContext.setCurrentValue(new ConstrainedValue((char) operator, constrainedNumber(t)));
+                    return JsonToken.VALUE_EMBEDDED_OBJECT;
                 }
-            } catch (NumberFormatException ignore) {
-                // treat as String
+                _parsingContext.setCurrentValue(null);
+                return t;
             }
+            // treat as String
         }
 
-        if ("false".equalsIgnoreCase(raw) || "no".equalsIgnoreCase(raw)) {
+        if (equalsIgnoreCase(buf, start, end, "false") || equalsIgnoreCase(buf, start, end, "no")) {
             _parsingContext.setCurrentValue(Boolean.FALSE);
             return JsonToken.VALUE_FALSE;
         }
-        if ("true".equalsIgnoreCase(raw) || "yes".equalsIgnoreCase(raw)) {
+        if (equalsIgnoreCase(buf, start, end, "true") || equalsIgnoreCase(buf, start, end, "yes")) {
             _parsingContext.setCurrentValue(Boolean.TRUE);
             return JsonToken.VALUE_TRUE;
         }
 
-        if (raw.startsWith("\"") && raw.endsWith("\"")) {
-            raw = raw.substring(1, raw.length() - 1);
+        if (end - start > 1 && buf[start] == '"' && buf[end - 1] == '"') {
+            start++;
+            end--;
+            for (int i = start; i < end - 1; i++) {
+                if (buf[i] == '\\' && buf[i + 1] == '"') {
+                    unescapeQuotes(buf, start, end);
+                    _parsingContext.setCurrentValue(null);
+                    return JsonToken.VALUE_STRING;
+                }
+            }
         }
-        _parsingContext.setCurrentValue(raw);
+        // String is created only when requested
+        _textBuffer.resetWithShared(buf, start, end - start);
+        _parsingContext.setCurrentValue(null);
         return JsonToken.VALUE_STRING;
     }
 
+    /**
+     * Leaves quoted value in {@link #_textBuffer} without backslashes of escaped quotes ({@code \"} becomes
+     * {@code "}). Other backslashes are kept. Passed buffer may be the input buffer, so it's not changed.
+     */
+    private void unescapeQuotes(char[] buf, int start, int end) {
+        char[] value = new char[end - start];
+        int len = 0;
+        for (int i = start; i < end; i++) {
+            if (buf[i] != '\\' || i + 1 == end || buf[i + 1] != '"') {
+                value[len++] = buf[i];
+            }
+        }
+        _textBuffer.resetWithShared(value, 0, len);
+    }
+
+    /**
+     * Checks whether the value is a number (like {@code 42}, {@code -1}, {@code +0.25} or {@code 1.5e3}) and if so,
+     * leaves only the number (without {@code +}) in {@link #_textBuffer}, so it can be decoded later.
+     * @param buf
+     * @param start
+     * @param end
+     * @return {@link JsonToken#VALUE_NUMBER_INT}, {@link JsonToken#VALUE_NUMBER_FLOAT} or {@code null} if the
+     * value is not a number
+     */
+    private JsonToken parseNumber(char[] buf, int start, int end) {
+        int ptr = start;
+        boolean negative = false;
+        if (buf[ptr] == '-' || buf[ptr] == '+') {
+            negative = buf[ptr] == '-';
+            if (!negative) {
+                start++;
+            }
+            ptr++;
+        }
+        int intStart = ptr;
+        while (ptr < end && buf[ptr] >= '0' && buf[ptr] <= '9') {
+            ptr++;
+        }
+        int intLen = ptr - intStart;
+        if (ptr == end) {
+            if (intLen == 0) {
+                return null;
+            }
+            _textBuffer.resetWithShared(buf, start, end - start);
+            return resetInt(negative, intLen);
+        }
+        if (buf[ptr] != '.') {
+            return null;
+        }
+        int fractStart = ++ptr;
+        while (ptr < end && buf[ptr] >= '0' && buf[ptr] <= '9') {
+            ptr++;
+        }
+        int fractLen = ptr - fractStart;
+        if (intLen + fractLen == 0) {
+            return null;
+        }
+        int expLen = 0;
+        if (ptr < end && (buf[ptr] == 'e' || buf[ptr] == 'E')) {
+            int expStart = ++ptr;
+            if (ptr < end && (buf[ptr] == '-' || buf[ptr] == '+')) {
+                ptr++;
+            }
+            while (ptr < end && buf[ptr] >= '0' && buf[ptr] <= '9') {
+                ptr++;
+                expLen++;
+            }
+            if (expLen == 0) {
+                return null;
+            }
+            expLen = ptr - expStart;
+        }
+        if (ptr != end) {
+            // e.g., date like 1936.1.1
+            return null;
+        }
+        _textBuffer.resetWithShared(buf, start, end - start);
+        return resetFloat(negative, intLen, fractLen, expLen);
+    }
+
+    /**
+     * Floating point numbers with up to 15 significant digits and without exponent are decoded as
+     * {@code digits / 10^fractLength} - both values are exact doubles, so the result is the same as from
+     * {@link Double#parseDouble(String)}, but without creating any String. Other floating point numbers are
+     * decoded as {@link BigDecimal} unless {@code double} is explicitly requested, so no precision is lost.
+     * @param expType
+     * @throws IOException
+     */
+    @Override
+    protected void _parseNumericValue(int expType) throws IOException {
+        if (_currToken == JsonToken.VALUE_NUMBER_FLOAT && expType != NR_BIGDECIMAL) {
+            if (isShortDecimal()) {
+                _numberDouble = shortDecimalValue();
+                _numTypesValid = NR_DOUBLE;
+                return;
+            }
+            if (expType == NR_UNKNOWN) {
+                expType = NR_BIGDECIMAL;
+            }
+        }
+        super._parseNumericValue(expType);
+    }
+
+    /**
+     * Number of a {@link ConstrainedValue} in text buffer - decoded using the same rules as numeric tokens, so
+     * {@link Integer}, {@link Long} or {@link Double} is used when the value fits without loss and
+     * {@link BigInteger}/{@link BigDecimal} only when needed.
+     * @param t
+     * @return
+     */
+    private Number constrainedNumber(JsonToken t) {
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            if (_intLength <= 18) {
+                long value = _numberNegative ? -numberDigits() : numberDigits();
+                return value == (int) value ? (Number) (int) value : (Number) value;
+            }
+            return new BigInteger(_textBuffer.contentsAsString());
+        }
+        if (isShortDecimal()) {
+            return shortDecimalValue();
+        }
+        return new BigDecimal(_textBuffer.contentsAsString());
+    }
+
+    /**
+     * Whether current floating point number can be decoded exactly by {@link #shortDecimalValue()}.
+     * @return
+     */
+    private boolean isShortDecimal() {
+        return _expLength == 0 && _intLength + _fractLength <= 15;
+    }
+
+    private double shortDecimalValue() {
+        double value = (double) numberDigits() / POWERS_OF_TEN[_fractLength];
+        return _numberNegative ? -value : value;
+    }
+
+    /**
+     * All digits of the number in text buffer (without sign and decimal point).
+     * @return
+     */
+    private long numberDigits() {
+        char[] buf = _textBuffer.getTextBuffer();
+        int ptr = _textBuffer.getTextOffset();
+        int end = ptr + _textBuffer.size();
+        long digits = 0L;
+        for (; ptr < end; ptr++) {
+            char c = buf[ptr];
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+            }
+        }
+        return digits;
+    }
+
+    private static boolean equalsIgnoreCase(char[] buf, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(buf[start + i]) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * After a value or end of scope we expect end of parent scope, a field or (rarely) EOF. We don't kno
      * @return
@@ -635,59 +1543,155 @@ public class Hoi4DbParser extends ParserBase {
         return JsonToken.NOT_AVAILABLE;
     }
 
-    private boolean nameChar(int c) {
-        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
-                || (c >= '0' && c <= '9')
-                || c == '_' || c == '.' || c == '@' || c == '?' || c == ':' || c == '-' || c == '\'' || c == '’') {
-            return true;
-        }
-        return false;
+    protected boolean nameChar(int c) {
+        return Hoi4DbCharTypes.is(c, NAME);
     }
 
-    private boolean numberChar(int c) {
-        if ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.') {
-            return true;
-        }
-        return false;
+    protected boolean numberChar(int c) {
+        return Hoi4DbCharTypes.is(c, NUMBER);
     }
 
-    private boolean in(char c, char... chars) {
-        for (char x : chars) {
-            if (c == x) {
-                return true;
-            }
+    /**
+     * Skips BOM at the beginning of the data - {@code U+FEFF} or UTF-8 BOM decoded as Latin-1 (or Windows-1252)
+     * characters.
+     */
+    private void skipBom() {
+        if (_inputPtr < _inputEnd && _inputBuffer[_inputPtr] == '\uFEFF') {
+            _inputPtr++;
+        } else if (_inputEnd - _inputPtr >= 3 && _inputBuffer[_inputPtr] == '\u00EF'
+                && _inputBuffer[_inputPtr + 1] == '\u00BB' && _inputBuffer[_inputPtr + 2] == '\u00BF') {
+            _inputPtr += 3;
         }
-        return false;
+        bomRead = true;
+    }
+
+    /**
+     * Whether non-ASCII character may be part of the name (e.g., {@code names = { Achille Amédée Édouard }}).
+     * @param c
+     * @return
+     */
+    protected boolean letter(int c) {
+        return Hoi4DbCharTypes.is(c, LETTER);
     }
 
     @Override
     public String getText() throws IOException {
+        if (_currToken == JsonToken.FIELD_NAME) {
+            return _parsingContext.getCurrentName();
+        }
+        if (inTextBuffer()) {
+            return textBufferAsString();
+        }
         if (_parsingContext.getCurrentValue() == null) {
             return null;
         }
         return _parsingContext.getCurrentValue().toString();
     }
 
+    /**
+     * Values with an operator (like {@code count < 2}) are available as {@link ConstrainedValue}.
+     * @return
+     */
+    @Override
+    public Object getEmbeddedObject() throws IOException {
+        return _currToken == JsonToken.VALUE_EMBEDDED_OBJECT ? _parsingContext.getCurrentValue() : null;
+    }
+
+    /**
+     * Numbers and Strings are not kept in parsing context - they're decoded only when needed.
+     * @return
+     */
+    @Override
+    public Object getCurrentValue() {
+        Object value = _parsingContext.getCurrentValue();
+        if (value == null && inTextBuffer()) {
+            try {
+                return _currToken == JsonToken.VALUE_STRING ? textBufferAsString() : getNumberValue();
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean hasTextCharacters() {
+        return _currToken == JsonToken.VALUE_STRING && inTextBuffer();
+    }
+
+    /**
+     * Strings and numbers are returned directly from {@link #_textBuffer} (which may share {@link #_inputBuffer}).
+     * Field names and other values are copied to reusable buffer.
+     * @return
+     */
     @Override
     public char[] getTextCharacters() throws IOException {
-        return new char[0];
+        if (inTextBuffer()) {
+            return _textBuffer.getTextBuffer();
+        }
+        String text = getText();
+        if (text == null) {
+            return null;
+        }
+        int len = text.length();
+        if (_nameCopyBuffer == null) {
+            _nameCopyBuffer = _ioContext.allocNameCopyBuffer(len);
+        } else if (_nameCopyBuffer.length < len) {
+            _nameCopyBuffer = new char[len];
+        }
+        text.getChars(0, len, _nameCopyBuffer, 0);
+        return _nameCopyBuffer;
     }
 
     @Override
     public int getTextLength() throws IOException {
-        return 0;
+        if (inTextBuffer()) {
+            return _textBuffer.size();
+        }
+        String text = getText();
+        return text == null ? 0 : text.length();
     }
 
     @Override
     public int getTextOffset() throws IOException {
+        if (inTextBuffer()) {
+            return _textBuffer.getTextOffset();
+        }
         return 0;
     }
 
-    private void updateLocation() {
+    /**
+     * Creates String from {@link #_textBuffer}. Short String values (identifiers like hull and module types or
+     * country tags, which repeat across many files) are looked up in the table of canonical values, if configured.
+     * @return
+     */
+    private String textBufferAsString() {
+        int len = _textBuffer.size();
+        if (_values != null && len <= _maxValueLength && _currToken == JsonToken.VALUE_STRING) {
+            return _values.findSymbol(_textBuffer.getTextBuffer(), _textBuffer.getTextOffset(), len);
+        }
+        return _textBuffer.contentsAsString();
+    }
+
+    /**
+     * Whether current token is a String or a number available in {@link #_textBuffer}. Booleans and
+     * {@link ConstrainedValue constrained values} are kept in parsing context.
+     * @return
+     */
+    private boolean inTextBuffer() {
+        if (_currToken == JsonToken.VALUE_NUMBER_INT || _currToken == JsonToken.VALUE_NUMBER_FLOAT) {
+            return true;
+        }
+        return _currToken == JsonToken.VALUE_STRING && _parsingContext.getCurrentValue() == null;
+    }
+
+    protected void updateLocation() {
         int ptr = _inputPtr;
         _tokenInputTotal = _currInputProcessed + ptr;
-        _tokenInputRow = _currInputRow;
-        _tokenInputCol = ptr - _currInputRowStart;
+        if (_trackLocation) {
+            _tokenInputRow = _currInputRow;
+            _tokenInputCol = ptr - _currInputRowStart;
+        }
     }
 
     private enum Hoi4Token {
@@ -695,8 +1699,6 @@ public class Hoi4DbParser extends ParserBase {
         FIELD,
         /** An array item: There's either {@code ,} after the name or right curly bracket meaning end of array */
         ITEM,
-        /** A field value: There's either other name after the name or right curly bracket meaning end of current scope */
-        VALUE,
         /** No idea... */
         UNKNOWN
     }
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Set of paths (like Jackson's {@link com.fasterxml.jackson.core.filter.TokenFilter}), which should be read by
+ * {@link Hoi4DbParser}. Fields not matching any path are skipped by the parser (scopes are skipped by counting
+ * braces, without creating any tokens). Whole scopes at the end of the path are read. Scopes leading to the
+ * matching fields are read too (even if nothing inside matches).</p>
+ *
+ * <p>Path is a list of field names separated with dots. A segment may be:<ul>
+ *     <li>{@code name} - field with given name</li>
+ *     <li>{@code *} - any field</li>
+ *     <li>{@code /regex/} - field with name matching regular expression (which may contain dots)</li>
+ * </ul>
+ * For example {@code /\d+\.\d+\.\d+/.if.create_equipment_variant} matches variants created in dated scopes.
+ * Array items are matched against the path of the array.</p>
+ *
+ * <p>Filter is immutable and may be shared by many parsers.</p>
+ */
+public final class Hoi4DbPathFilter {
+
+    /** Node matching entire scope */
+    static final Hoi4DbPathFilter INCLUDE_ALL = new Hoi4DbPathFilter();
+
+    private final Map<String, Hoi4DbPathFilter> names = new HashMap<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<Hoi4DbPathFilter> patternFilters = new ArrayList<>();
+
+    private Hoi4DbPathFilter() {
+    }
+
+    /**
+     * Creates a filter including all passed paths.
+     * @param paths
+     * @return
+     */
+    public static Hoi4DbPathFilter compile(String... paths) {
+        Hoi4DbPathFilter root = new Hoi4DbPathFilter();
+        for (String path : paths) {
+            root.add(path, 0);
+        }
+        return root;
+    }
+
+    /**
+     * Returns filter to use for the value of given field. {@code null} means the field should be skipped.
+     * Literal names are checked before patterns and first matching pattern is used.
+     * @param name
+     * @return
+     */
+    public Hoi4DbPathFilter includeField(String name) {
+        if (this == INCLUDE_ALL) {
+            return INCLUDE_ALL;
+        }
+        Hoi4DbPathFilter f = names.get(name);
+        if (f != null) {
+            return f;
+        }
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(name).matches()) {
+                return patternFilters.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether entire scope (or value) is read.
+     * @return
+     */
+    public boolean includesAll() {
+        return this == INCLUDE_ALL;
+    }
+
+    /**
+     * Adds a path (starting at given index) to this node.
+     * @param path
+     * @param start
+     */
+    private void add(String path, int start) {
+        String segment;
+        int next;
+        if (path.startsWith("/", start)) {
+            int end = path.indexOf('/', start + 1);
+            while (end > 0 && end + 1 < path.length() && path.charAt(end + 1) != '.') {
+                end = path.indexOf('/', end + 1);
+            }
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated regular expression in path \"" + path + "\"");
+            }
+            segment = path.substring(start, end + 1);
+            next = end + 1;
+        } else {
+            next = path.indexOf('.', start);
+            if (next < 0) {
+                next = path.length();
+            }
+            segment = path.substring(start, next);
+        }
+        if (segment.isEmpty()) {
+            throw new IllegalArgumentException("Empty segment in path \"" + path + "\"");
+        }
+        boolean last = next >= path.length();
+
+        if (segment.startsWith("/") || "*".equals(segment)) {
+            String regex = "*".equals(segment) ? ".*" : segment.substring(1, segment.length() - 1);
+            int idx = -1;
+            for (int i = 0; i < patterns.size(); i++) {
+                if (patterns.get(i).pattern().equals(regex)) {
+                    idx = i;
+                    break;
+                }
+            }
+            if (idx < 0) {
+                patterns.add(Pattern.compile(regex));
+                patternFilters.add(last ? INCLUDE_ALL : new Hoi4DbPathFilter());
+                if (!last) {
+                    patternFilters.get(patternFilters.size() - 1).add(path, next + 1);
+                }
+            } else if (last) {
+                patternFilters.set(idx, INCLUDE_ALL);
+            } else if (patternFilters.get(idx) != INCLUDE_ALL) {
+                patternFilters.get(idx).add(path, next + 1);
+            }
+        } else {
+            Hoi4DbPathFilter child = names.get(segment);
+            if (last) {
+                names.put(segment, INCLUDE_ALL);
+            } else if (child == null) {
+                child = new Hoi4DbPathFilter();
+                names.put(segment, child);
+                child.add(path, next + 1);
+            } else if (child != INCLUDE_ALL) {
+                child.add(path, next + 1);
+            }
+        }
+    }
+
+}
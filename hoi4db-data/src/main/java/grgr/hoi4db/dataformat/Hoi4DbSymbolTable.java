@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Canonicalizing table of field names - similar to Jackson's
+ * {@link com.fasterxml.jackson.core.sym.CharsToNameCanonicalizer}. The same few hundred keys ({@code type},
+ * {@code name}, {@code modules}, {@code limit}, ...) repeat millions of times in game files, so a name found in
+ * the table is returned without creating new String.</p>
+ *
+ * <p>There's one root table per {@link Hoi4DbFactory}. Each parser gets own child table (sharing root's arrays
+ * until new name is added), so parsers never synchronize when looking up names. Names added by the parser are
+ * merged into root table when parser is closed - root keeps the instance that was merged first. If root table
+ * didn't change in the meantime, it simply takes child's arrays (like Jackson's canonicalizer does). Reused
+ * parsers {@link #refresh() refresh} their tables, so they see names found by other parsers.</p>
+ */
+public final class Hoi4DbSymbolTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // don't let huge number of distinct names (like dates in history files) grow the table forever
+    private static final int MAX_SIZE = 0x10000;
+
+    // only for root table
+    private final AtomicReference<State> rootState;
+    private final LongAdder totalHits;
+    private final LongAdder totalMisses;
+
+    // only for child table
+    private final Hoi4DbSymbolTable parent;
+    private String[] symbols;
+    private int[] hashes;
+    private int size;
+    private boolean shared;
+    // root state the table was created or refreshed from
+    private State base;
+    // names added since the table was created or refreshed
+    private final List<String> added;
+    private long hits;
+    private long misses;
+
+    private Hoi4DbSymbolTable() {
+        parent = null;
+        rootState = new AtomicReference<>(new State(new String[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], 0));
+        totalHits = new LongAdder();
+        totalMisses = new LongAdder();
+        added = null;
+    }
+
+    private Hoi4DbSymbolTable(Hoi4DbSymbolTable parent, State state) {
+        this.parent = parent;
+        rootState = null;
+        totalHits = null;
+        totalMisses = null;
+        symbols = state.symbols;
+        hashes = state.hashes;
+        size = state.size;
+        shared = true;
+        base = state;
+        added = new ArrayList<>();
+    }
+
+    /**
+     * Creates new, empty root table.
+     * @return
+     */
+    public static Hoi4DbSymbolTable createRoot() {
+        return new Hoi4DbSymbolTable();
+    }
+
+    /**
+     * Creates a table to be used by single parser. Can be called only on root table.
+     * @return
+     */
+    public Hoi4DbSymbolTable makeChild() {
+        if (parent != null) {
+            throw new IllegalStateException("Child table can't create another child");
+        }
+        return new Hoi4DbSymbolTable(this, rootState.get());
+    }
+
+    /**
+     * Whether this table was created by {@link #makeChild()} of passed table.
+     * @param root
+     * @return
+     */
+    boolean isChildOf(Hoi4DbSymbolTable root) {
+        return root != null && parent == root;
+    }
+
+    /**
+     * Returns canonical name for passed characters.
+     * @param buf
+     * @param offset
+     * @param len
+     * @return
+     */
+    public String findSymbol(char[] buf, int offset, int len) {
+        int hash = 0;
+        for (int i = offset, end = offset + len; i < end; i++) {
+            hash = hash * 31 + buf[i];
+        }
+        int mask = symbols.length - 1;
+        int idx = spread(hash) & mask;
+        String s;
+        while ((s = symbols[idx]) != null) {
+            if (hashes[idx] == hash && matches(s, buf, offset, len)) {
+                hits++;
+                return s;
+            }
+            idx = (idx + 1) & mask;
+        }
+
+        misses++;
+        String name = new String(buf, offset, len);
+        if (insert(idx, hash, name)) {
+            added.add(name);
+        }
+        return name;
+    }
+
+    /**
+     * Returns canonical instance of a name that is already available as String (read by other parser).
+     * @param name
+     * @return
+     */
+    public String findSymbol(String name) {
+        // the same hash as computed from characters
+        int hash = name.hashCode();
+        int idx = slot(name, hash);
+        String s = symbols[idx];
+        if (s != null) {
+            hits++;
+            return s;
+        }
+        misses++;
+        if (insert(idx, hash, name)) {
+            added.add(name);
+        }
+        return name;
+    }
+
+    /**
+     * Adds a name (found by other table) unless it's already known.
+     * @param name
+     */
+    private void add(String name) {
+        int hash = name.hashCode();
+        int idx = slot(name, hash);
+        if (symbols[idx] == null) {
+            insert(idx, hash, name);
+        }
+    }
+
+    /**
+     * Index of the name in the table or of free slot where it should be inserted.
+     */
+    private int slot(String name, int hash) {
+        int mask = symbols.length - 1;
+        int idx = spread(hash) & mask;
+        String s;
+        while ((s = symbols[idx]) != null) {
+            if (hashes[idx] == hash && s.equals(name)) {
+                break;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return idx;
+    }
+
+    /**
+     * Puts new name into free slot (copying shared arrays first).
+     * @return {@code false} if the table is full
+     */
+    private boolean insert(int idx, int hash, String name) {
+        if (size >= MAX_SIZE) {
+            return false;
+        }
+        if (shared) {
+            symbols = symbols.clone();
+            hashes = hashes.clone();
+            shared = false;
+        }
+        symbols[idx] = name;
+        hashes[idx] = hash;
+        if (++size > (symbols.length >> 1) + (symbols.length >> 2)) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Passes names found by the parser (and statistics) back to root table. Should be called when parser is
+     * closed. Root table takes arrays of this table if it's still in the state this table started from. Otherwise
+     * new names are merged into current root table (other parsers may have added different names in the meantime).
+     * Then this table is {@link #refresh() refreshed}.
+     */
+    public void release() {
+        if (parent == null) {
+            return;
+        }
+        parent.totalHits.add(hits);
+        parent.totalMisses.add(misses);
+        hits = 0L;
+        misses = 0L;
+        if (!added.isEmpty()
+                && !parent.rootState.compareAndSet(base, new State(symbols, hashes, size))) {
+            // other parser released its names first
+            parent.rootState.updateAndGet(current -> {
+                Hoi4DbSymbolTable merged = new Hoi4DbSymbolTable(parent, current);
+                for (String name : added) {
+                    merged.add(name);
+                }
+                return merged.shared ? current : new State(merged.symbols, merged.hashes, merged.size);
+            });
+        }
+        refresh();
+    }
+
+    /**
+     * Starts using current names of root table (including names found by other parsers since this table was
+     * created). Names not {@link #release() released} yet are forgotten. Should be called when parser is reused.
+     */
+    public void refresh() {
+        if (parent == null) {
+            return;
+        }
+        State state = parent.rootState.get();
+        symbols = state.symbols;
+        hashes = state.hashes;
+        size = state.size;
+        shared = true;
+        base = state;
+        added.clear();
+    }
+
+    /**
+     * Number of distinct names known to this table.
+     * @return
+     */
+    public int size() {
+        return parent == null ? rootState.get().size : size;
+    }
+
+    /**
+     * Number of lookups (from released child tables) that returned already known name.
+     * @return
+     */
+    public long getHitCount() {
+        return parent == null ? totalHits.sum() : hits;
+    }
+
+    /**
+     * Number of lookups (from released child tables) that had to create new String.
+     * @return
+     */
+    public long getMissCount() {
+        return parent == null ? totalMisses.sum() : misses;
+    }
+
+    /**
+     * Approximate heap size of the names kept in this table - String objects with their arrays (assuming compact,
+     * Latin-1 strings).
+     * @return
+     */
+    public long getRetainedBytes() {
+        String[] table = parent == null ? rootState.get().symbols : symbols;
+        long bytes = 0L;
+        for (String s : table) {
+            if (s != null) {
+                // String object + byte[] header and content, 8 byte aligned
+                bytes += 24 + ((16 + s.length() + 7) & ~7);
+            }
+        }
+        return bytes;
+    }
+
+    public double getHitRatio() {
+        long h = getHitCount();
+        long total = h + getMissCount();
+        return total == 0L ? 0d : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("symbols: %d, hits: %d, misses: %d, hit ratio: %.02f%%",
+                size(), getHitCount(), getMissCount(), getHitRatio() * 100d);
+    }
+
+    private void rehash() {
+        String[] oldSymbols = symbols;
+        int[] oldHashes = hashes;
+        symbols = new String[oldSymbols.length << 1];
+        hashes = new int[symbols.length];
+        int mask = symbols.length - 1;
+        for (int i = 0; i < oldSymbols.length; i++) {
+            if (oldSymbols[i] != null) {
+                int idx = spread(oldHashes[i]) & mask;
+                while (symbols[idx] != null) {
+                    idx = (idx + 1) & mask;
+                }
+                symbols[idx] = oldSymbols[i];
+                hashes[idx] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String s, char[] buf, int offset, int len) {
+        if (s.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) != buf[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class State {
+        final String[] symbols;
+        final int[] hashes;
+        final int size;
+
+        State(String[] symbols, int[] hashes, int size) {
+            this.symbols = symbols;
+            this.hashes = hashes;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>On-disk cache of token streams of parsed game files. Tokens are stored in Smile (binary JSON) format, so
+ * reading cached file doesn't have to tokenize HOI4 text again - it's mostly sequential read of compact binary
+ * data.</p>
+ *
+ * <p>Each cached file starts with a header containing path, size, modification time and CRC32 of the source
+ * file. When size and modification time match, cached tokens are used directly. When only modification time
+ * differs, content checksum decides. Otherwise the file is parsed again (and cache is replaced).</p>
+ *
+ * <p>Location of the tokens is not available from cached parsers.</p>
+ */
+public class Hoi4DbTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Hoi4DbTokenCache.class);
+
+    private static final int MAGIC = 0x48344454; // "H4DT"
+    private static final int VERSION = 3;
+
+    // offset of modification time in the header - after magic, version and size
+    private static final int MTIME_OFFSET = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Hoi4DbFactory factory;
+    private final SmileFactory smileFactory;
+    private final Path cacheDir;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates cache storing tokens of files parsed with given factory in given directory.
+     * @param factory
+     * @param cacheDir
+     */
+    public Hoi4DbTokenCache(Hoi4DbFactory factory, Path cacheDir) {
+        this.factory = factory;
+        this.cacheDir = cacheDir;
+        smileFactory = new SmileFactory();
+        // the same values (types, modules, ...) repeat a lot
+        smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+    }
+
+    /**
+     * Returns parser for given file - reading cached tokens if possible. If the file wasn't cached (or has
+     * changed), it is parsed and its tokens are cached first.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public JsonParser createParser(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        Source source = new Source(path, attrs.size(), attrs.lastModifiedTime().toMillis());
+        Path cached = cacheDir.resolve(cacheFileName(path));
+
+        JsonParser parser = Files.isRegularFile(cached) ? openCached(cached, source) : null;
+        if (parser != null) {
+            hits.increment();
+            return parser;
+        }
+
+        misses.increment();
+        try {
+            // content may be already read for checksum
+            byte[] tokens = store(source, cached);
+            return cachedTokensParser(smileFactory.createParser(tokens));
+        } catch (IOException e) {
+            LOG.warn("Can't cache tokens of {}: {}", path, e.getMessage());
+        }
+        return factory.createParser(source.content());
+    }
+
+    /**
+     * Number of files read from cache.
+     * @return
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of files that had to be parsed.
+     * @return
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("token cache %s: hits: %d, misses: %d", cacheDir, getHitCount(), getMissCount());
+    }
+
+    /**
+     * Opens cached tokens if the header matches the source file. Returns {@code null} otherwise.
+     */
+    private JsonParser openCached(Path cached, Source source) throws IOException {
+        InputStream is = Files.newInputStream(cached);
+        boolean valid = false;
+        try {
+            InputStream buffered = new BufferedInputStream(is, BUFFER_SIZE);
+            DataInputStream in = new DataInputStream(buffered);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long cachedSize = in.readLong();
+            long cachedMtime = in.readLong();
+            long cachedCrc = in.readLong();
+            if (cachedSize != source.size || !in.readUTF().equals(source.path.toString())) {
+                return null;
+            }
+            if (cachedMtime != source.mtime) {
+                // touched, but maybe not changed
+                if (crc(source.content()) != cachedCrc) {
+                    return null;
+                }
+                updateMtime(cached, source.mtime);
+            }
+            JsonParser parser = cachedTokensParser(smileFactory.createParser(buffered));
+            valid = true;
+            return parser;
+        } catch (IOException e) {
+            LOG.warn("Can't read cached tokens from {}: {}", cached, e.getMessage());
+            return null;
+        } finally {
+            if (!valid) {
+                is.close();
+            }
+        }
+    }
+
+    private JsonParser cachedTokensParser(JsonParser smileParser) {
+        Hoi4DbSymbolTable values = factory.getValueTable();
+        return new CachedTokensParser(smileParser, factory.getSymbolTable().makeChild(),
+                values == null ? null : values.makeChild(), factory._maxValueLength);
+    }
+
+    /**
+     * Parses source file and writes its tokens to the cache.
+     * @return tokens (without the header), so they don't have to be read back from the cache
+     */
+    private byte[] store(Source source, Path cached) throws IOException {
+        Files.createDirectories(cacheDir);
+        byte[] data = source.content();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(data.length);
+        out.writeLong(source.mtime);
+        out.writeLong(crc(data));
+        out.writeUTF(source.path.toString());
+        out.flush();
+
+        ByteArrayOutputStream tokens = new ByteArrayOutputStream(data.length / 2);
+        try (JsonParser parser = factory.createParser(data);
+             JsonGenerator generator = smileFactory.createGenerator(tokens)) {
+            JsonToken t;
+            while ((t = parser.nextToken()) != null) {
+                if (t == JsonToken.VALUE_EMBEDDED_OBJECT && parser.getEmbeddedObject() instanceof ConstrainedValue) {
+                    // Smile can't store custom objects
+                    generator.writeBinary(encode((ConstrainedValue) parser.getEmbeddedObject()));
+                } else {
+                    generator.copyCurrentEvent(parser);
+                }
+            }
+        }
+
+        Path tmp = Files.createTempFile(cacheDir, cached.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                header.writeTo(os);
+                tokens.writeTo(os);
+            }
+            try {
+                Files.move(tmp, cached, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return tokens.toByteArray();
+    }
+
+    private static void updateMtime(Path cached, long mtime) throws IOException {
+        try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8).putLong(0, mtime);
+            channel.write(buffer, MTIME_OFFSET);
+        }
+    }
+
+    /**
+     * Encodes {@link ConstrainedValue} as operator, type of the number and the number itself, so decoded value
+     * has the same type.
+     */
+    private static byte[] encode(ConstrainedValue value) {
+        Number n = value.getValue();
+        char type;
+        if (n instanceof Integer) {
+            type = 'i';
+        } else if (n instanceof Long) {
+            type = 'l';
+        } else if (n instanceof Double) {
+            type = 'd';
+        } else if (n instanceof BigInteger) {
+            type = 'I';
+        } else {
+            type = 'D';
+        }
+        String number = n instanceof BigDecimal ? ((BigDecimal) n).toPlainString() : n.toString();
+        return (String.valueOf(value.getOperator()) + type + number).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static ConstrainedValue decode(byte[] data) {
+        String number = new String(data, 2, data.length - 2, StandardCharsets.US_ASCII);
+        Number n;
+        switch (data[1]) {
+            case 'i':
+                n = Integer.valueOf(number);
+                break;
+            case 'l':
+                n = Long.valueOf(number);
+                break;
+            case 'd':
+                n = Double.valueOf(number);
+                break;
+            case 'I':
+                n = new BigInteger(number);
+                break;
+            default:
+                n = new BigDecimal(number);
+                break;
+        }
+        return new ConstrainedValue((char) data[0], n);
+    }
+
+    private static String cacheFileName(Path source) {
+        return String.format("%s-%08x.smile", source.getFileName(), source.toString().hashCode());
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    /**
+     * Source file with its content read at most once (for checksum and/or parsing).
+     */
+    private static class Source {
+
+        final Path path;
+        final long size;
+        final long mtime;
+        private byte[] content;
+
+        Source(Path path, long size, long mtime) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        byte[] content() throws IOException {
+            if (content == null) {
+                content = Files.readAllBytes(path);
+            }
+            return content;
+        }
+
+    }
+
+    /**
+     * Turns binary values back into {@link ConstrainedValue constrained values}. Names and short String values
+     * are looked up in tables of the {@link Hoi4DbFactory}, so cached files share instances with parsed ones.
+     */
+    private static class CachedTokensParser extends JsonParserDelegate {
+
+        private final Hoi4DbSymbolTable symbols;
+        // null if values are not deduplicated
+        private final Hoi4DbSymbolTable values;
+        private final int maxValueLength;
+
+        CachedTokensParser(JsonParser d, Hoi4DbSymbolTable symbols, Hoi4DbSymbolTable values, int maxValueLength) {
+            super(d);
+            this.symbols = symbols;
+            this.values = values;
+            this.maxValueLength = maxValueLength;
+        }
+
+        @Override
+        public Object getEmbeddedObject() throws IOException {
+            Object value = delegate.getEmbeddedObject();
+            return value instanceof byte[] ? decode((byte[]) value) : value;
+        }
+
+        @Override
+        public String getCurrentName() throws IOException {
+            String name = delegate.getCurrentName();
+            return name == null ? null : symbols.findSymbol(name);
+        }
+
+        @Override
+        public String currentName() throws IOException {
+            return getCurrentName();
+        }
+
+        @Override
+        public String nextFieldName() throws IOException {
+            return nextToken() == JsonToken.FIELD_NAME ? getCurrentName() : null;
+        }
+
+        @Override
+        public String nextTextValue() throws IOException {
+            return nextToken() == JsonToken.VALUE_STRING ? getText() : null;
+        }
+
+        @Override
+        public String getText() throws IOException {
+            JsonToken t = currentToken();
+            if (t == JsonToken.FIELD_NAME) {
+                return getCurrentName();
+            }
+            if (t == JsonToken.VALUE_STRING) {
+                String text = delegate.getText();
+                return values != null && text.length() <= maxValueLength ? values.findSymbol(text) : text;
+            }
+            if (t == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                return getEmbeddedObject().toString();
+            }
+            return delegate.getText();
+        }
+
+        @Override
+        public String getValueAsString() throws IOException {
+            return getValueAsString(null);
+        }
+
+        @Override
+        public String getValueAsString(String defaultValue) throws IOException {
+            JsonToken t = currentToken();
+            if (t == JsonToken.FIELD_NAME || t == JsonToken.VALUE_STRING) {
+                return getText();
+            }
+            return delegate.getValueAsString(defaultValue);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!delegate.isClosed()) {
+                symbols.release();
+                if (values != null) {
+                    values.release();
+                }
+            }
+            super.close();
+        }
+
+    }
+
+}
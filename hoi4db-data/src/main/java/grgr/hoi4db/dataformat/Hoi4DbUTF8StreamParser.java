@@ -0,0 +1,756 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package grgr.hoi4db.dataformat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.io.IOContext;
+
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.LETTER;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.NAME;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.SKIP;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.TYPES;
+import static grgr.hoi4db.dataformat.Hoi4DbCharTypes.VALUE;
+
+/**
+ * {@link Hoi4DbParser} that works directly on UTF-8 encoded bytes (like Jackson's
+ * {@link com.fasterxml.jackson.core.json.UTF8StreamJsonParser}) instead of chars decoded by
+ * {@link java.io.InputStreamReader}.
+ * Whitespace and comments are skipped without decoding, only names and values are decoded into
+ * {@link com.fasterxml.jackson.core.util.TextBuffer}. Almost all game files are pure ASCII, so decoding is usually
+ * a simple byte to char copy.
+ * <p>Data is accessed through {@link ByteBuffer}, which may wrap buffer filled from {@link InputStream}, passed
+ * {@code byte[]} or (for files) a {@link java.nio.MappedByteBuffer} covering entire file.</p>
+ */
+public class Hoi4DbUTF8StreamParser extends Hoi4DbParser {
+
+    // high bit of each byte in a long word - to check 8 bytes at a time for non-ASCII ones
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    // size of data checked for UTF-8 validity
+    private static final int DETECTION_BLOCK = 64 * 1024;
+
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    // chars for Windows-1252 bytes - bytes undefined in Windows-1252 are mapped like in Latin-1
+    private static final char[] WINDOWS_1252_CHARS = new char[256];
+
+    static {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            bytes[i] = (byte) i;
+        }
+        String chars = new String(bytes, WINDOWS_1252);
+        for (int i = 0; i < 256; i++) {
+            char c = chars.charAt(i);
+            WINDOWS_1252_CHARS[i] = c == '\uFFFD' ? (char) i : c;
+        }
+    }
+
+    private InputStream _inputStream;
+
+    // to read data from InputStream (or passed directly as byte[])
+    protected byte[] _inputBytes;
+
+    // data being parsed - wraps _inputBytes or is entire input (e.g., memory mapped file)
+    protected ByteBuffer _input;
+
+    // whether _inputBytes comes from IOContext and should be released
+    private boolean _bufferRecyclable;
+
+    private boolean bomRead;
+
+    // start of a name/value being collected - bytes from this position are kept when reading next chunk of data
+    private int _markPtr = -1;
+
+    // whether non ASCII bytes are Windows-1252 characters instead of UTF-8 sequences - see Feature.DETECT_ENCODING
+    private boolean _windows1252;
+
+    public Hoi4DbUTF8StreamParser(IOContext ctxt, int features, InputStream in, Hoi4DbSymbolTable symbols) {
+        this(ctxt, features, in, symbols, null);
+    }
+
+    /**
+     * Parser reading from {@link InputStream} into a buffer taken from the pool.
+     * @param ctxt
+     * @param features
+     * @param in
+     * @param symbols
+     * @param bufferPool {@code null} to use buffer from {@link IOContext}
+     */
+    public Hoi4DbUTF8StreamParser(IOContext ctxt, int features, InputStream in, Hoi4DbSymbolTable symbols,
+            Hoi4DbBufferPool bufferPool) {
+        super(ctxt, features, symbols, bufferPool);
+        _inputStream = in;
+        _inputBytes = bufferPool != null ? bufferPool.allocBytes() : ctxt.allocReadIOBuffer();
+        _input = ByteBuffer.wrap(_inputBytes);
+        _bufferRecyclable = true;
+    }
+
+    public Hoi4DbUTF8StreamParser(IOContext ctxt, int features, byte[] data, int offset, int len,
+            Hoi4DbSymbolTable symbols) {
+        this(ctxt, features, ByteBuffer.wrap(data, offset, len), symbols);
+    }
+
+    /**
+     * Parser for entire data available in single {@link ByteBuffer} (from its position to its limit). There's
+     * no need to read or copy anything, so names and values never cross buffer boundaries.
+     * @param ctxt
+     * @param features
+     * @param data
+     * @param symbols
+     */
+    public Hoi4DbUTF8StreamParser(IOContext ctxt, int features, ByteBuffer data, Hoi4DbSymbolTable symbols) {
+        super(ctxt, features, symbols, null);
+        _input = data;
+        _bufferRecyclable = false;
+        _inputPtr = data.position();
+        _inputEnd = data.limit();
+        // so that offsets and columns are relative to the passed data
+        _currInputProcessed = -_inputPtr;
+        _currInputRowStart = _inputPtr;
+        skipBom();
+    }
+
+    @Override
+    protected void _closeInput() throws IOException {
+        if (_inputStream != null) {
+            _inputStream.close();
+            _inputStream = null;
+        }
+    }
+
+    @Override
+    protected void _releaseBuffers() throws IOException {
+        super._releaseBuffers();
+        // don't keep memory mapped file
+        _input = null;
+    }
+
+    @Override
+    protected void releaseReadBuffers() {
+        super.releaseReadBuffers();
+        if (_bufferRecyclable && _inputBytes != null) {
+            releaseBytes(_inputBytes);
+        }
+        _inputBytes = null;
+    }
+
+    /**
+     * Byte parser can't read chars - see {@link Hoi4DbParser#reset(Reader)}.
+     * @param reader
+     * @throws IOException
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void reset(Reader reader) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " reads bytes, not characters");
+    }
+
+    /**
+     * Prepares this parser to read from another {@link InputStream}. See {@link Hoi4DbParser#reset(Reader)}.
+     * @param in
+     * @throws IOException
+     */
+    public void reset(InputStream in) throws IOException {
+        resetState(in);
+        _inputStream = in;
+        if (_inputBytes == null || !_bufferRecyclable) {
+            _inputBytes = _bufferPool != null ? _bufferPool.allocBytes() : _ioContext.allocReadIOBuffer();
+            _bufferRecyclable = true;
+        }
+        _input = ByteBuffer.wrap(_inputBytes);
+        _markPtr = -1;
+        bomRead = false;
+        configureFeatures();
+    }
+
+    /**
+     * Prepares this parser to read data between position and limit of passed {@link ByteBuffer}. See
+     * {@link Hoi4DbParser#reset(Reader)}.
+     * @param data
+     * @throws IOException
+     */
+    public void reset(ByteBuffer data) throws IOException {
+        reset(data.duplicate(), data);
+    }
+
+    /**
+     * Prepares this parser to read memory mapped file. See {@link Hoi4DbParser#reset(Reader)}.
+     * @param path
+     * @throws IOException
+     */
+    public void reset(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                // mapping is valid for single ByteBuffer only
+                reset(Files.newInputStream(path));
+                return;
+            }
+            reset(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), path);
+        }
+    }
+
+    private void reset(ByteBuffer data, Object sourceRef) throws IOException {
+        resetState(sourceRef);
+        _inputStream = null;
+        _input = data;
+        _inputPtr = data.position();
+        _inputEnd = data.limit();
+        _currInputProcessed = -_inputPtr;
+        _currInputRowStart = _inputPtr;
+        _markPtr = -1;
+        skipBom();
+        configureFeatures();
+    }
+
+    @Override
+    protected boolean canRecomputeLocation() {
+        return _inputStream == null;
+    }
+
+    @Override
+    protected void configureFeatures() {
+        super.configureFeatures();
+        if (!Feature.DETECT_ENCODING.enabledIn(_formatFeatures)) {
+            // buffer passed to the constructor may already have been checked
+            _windows1252 = false;
+        }
+    }
+
+    @Override
+    protected int inputAt(int index) {
+        return _input.get(index) & 0xFF;
+    }
+
+    /**
+     * Ensures that {@link #_input} has something to read. Data starting at {@link #_markPtr} (if set) is moved
+     * to the beginning of the buffer, so name or value being collected is always available as single range
+     * of bytes.
+     *
+     * @return
+     */
+    @Override
+    protected boolean thereIsMore() {
+        if (_inputPtr < _inputEnd) {
+            return true;
+        }
+        if (_inputStream == null) {
+            return false;
+        }
+        try {
+            int keep = 0;
+            int shift = _inputEnd;
+            if (_markPtr >= 0) {
+                keep = _inputEnd - _markPtr;
+                shift = _markPtr;
+                if (keep == _inputBytes.length) {
+                    // single token doesn't fit - we need bigger buffer
+                    byte[] bigger = new byte[_inputBytes.length << 1];
+                    System.arraycopy(_inputBytes, _markPtr, bigger, 0, keep);
+                    if (_bufferRecyclable) {
+                        releaseBytes(_inputBytes);
+                        _bufferRecyclable = false;
+                    }
+                    _inputBytes = bigger;
+                    _input = ByteBuffer.wrap(_inputBytes);
+                } else if (keep > 0) {
+                    System.arraycopy(_inputBytes, _markPtr, _inputBytes, 0, keep);
+                }
+                _markPtr = 0;
+            }
+            _currInputProcessed += shift;
+            _currInputRowStart -= shift;
+            _inputPtr = keep;
+            _inputEnd = keep;
+
+            int count = _inputStream.read(_inputBytes, keep, _inputBytes.length - keep);
+            if (count > 0) {
+                _inputEnd += count;
+                if (!bomRead) {
+                    skipBom();
+                }
+                return true;
+            }
+            _closeInput();
+
+            if (count == 0) {
+                throw new IOException("InputStream returned 0 bytes");
+            }
+
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private void releaseBytes(byte[] buffer) {
+        if (_bufferPool != null) {
+            _bufferPool.releaseBytes(buffer);
+        } else {
+            _ioContext.releaseReadIOBuffer(buffer);
+        }
+    }
+
+    /**
+     * Skips UTF-8 BOM at the beginning of the data. Without BOM, first block of available data is checked for
+     * UTF-8 validity - if it's not valid UTF-8, the data is decoded as Windows-1252.
+     */
+    protected void skipBom() {
+        _windows1252 = false;
+        if (_inputEnd - _inputPtr >= 3 && (_input.get(_inputPtr) & 0xFF) == 0xEF
+                && (_input.get(_inputPtr + 1) & 0xFF) == 0xBB && (_input.get(_inputPtr + 2) & 0xFF) == 0xBF) {
+            _inputPtr += 3;
+        } else if (Feature.DETECT_ENCODING.enabledIn(_formatFeatures)) {
+            _windows1252 = !validUtf8(_input, _inputPtr, Math.min(_inputEnd, _inputPtr + DETECTION_BLOCK));
+        }
+        bomRead = true;
+    }
+
+    /**
+     * Returns {@link StandardCharsets#UTF_8} or Windows-1252 - if data without BOM isn't valid UTF-8.
+     * @return
+     */
+    public Charset getCharset() {
+        return _windows1252 ? WINDOWS_1252 : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Decodes the data using given charset instead of detected one - e.g., when the data is part of bigger
+     * input, which was already checked. Only UTF-8 and Windows-1252 are supported.
+     * @param charset
+     */
+    public void setCharset(Charset charset) {
+        if (!StandardCharsets.UTF_8.equals(charset) && !WINDOWS_1252.equals(charset)) {
+            throw new IllegalArgumentException("Unsupported charset: " + charset);
+        }
+        _windows1252 = WINDOWS_1252.equals(charset);
+    }
+
+    /**
+     * Checks whether the bytes are valid UTF-8 (sequence cut at the end is accepted). ASCII is checked 8 bytes
+     * at a time.
+     */
+    static boolean validUtf8(ByteBuffer input, int ptr, int end) {
+        while (ptr < end) {
+            if (end - ptr >= 8 && (input.getLong(ptr) & HIGH_BITS) == 0L) {
+                ptr += 8;
+                continue;
+            }
+            int c = input.get(ptr++) & 0xFF;
+            if (c < 0x80) {
+                continue;
+            }
+            int needed;
+            if (c >= 0xC2 && c <= 0xDF) {
+                needed = 1;
+            } else if ((c & 0xF0) == 0xE0) {
+                needed = 2;
+            } else if (c >= 0xF0 && c <= 0xF4) {
+                needed = 3;
+            } else {
+                // continuation byte, overlong or out of range sequence
+                return false;
+            }
+            for (int n = 0; n < needed && ptr < end; n++) {
+                if ((input.get(ptr++) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void restoreState() throws IOException {
+        super.restoreState();
+        _markPtr = -1;
+    }
+
+    @Override
+    protected int skipWsAndComments() throws IOException {
+        updateLocation();
+        final boolean track = _trackLocation;
+        boolean inComment = false;
+        boolean hadCr = false;
+        while (_inputPtr < _inputEnd || thereIsMore()) {
+            ByteBuffer input = _input;
+            int ptr = _inputPtr;
+            int end = _inputEnd;
+            while (ptr < end) {
+                int c = input.get(ptr++) & 0xFF;
+                if (hadCr) {
+                    hadCr = false;
+                    if (c != '\n') {
+                        // Mac
+                        newLine(ptr);
+                    }
+                }
+                if (c >= 128 || (TYPES[c] & SKIP) == 0) {
+                    if (!inComment) {
+                        _inputPtr = ptr - 1;
+                        return c;
+                    }
+                } else if (c == '\n') {
+                    inComment = false;
+                    if (track) {
+                        newLine(ptr);
+                    }
+                } else if (c == '\r') {
+                    inComment = false;
+                    hadCr = track;
+                } else if (c == '#') {
+                    inComment = true;
+                }
+            }
+            _inputPtr = ptr;
+        }
+
+        return -1;
+    }
+
+    @Override
+    protected void skipScope() throws IOException {
+        final boolean track = _trackLocation;
+        int depth = 1;
+        boolean inString = false;
+        boolean escape = false;
+        boolean inComment = false;
+        while (_inputPtr < _inputEnd || thereIsMore()) {
+            ByteBuffer input = _input;
+            int ptr = _inputPtr;
+            int end = _inputEnd;
+            while (ptr < end) {
+                int c = input.get(ptr++);
+                if (c == '\n' || c == '\r') {
+                    if (c == '\n' && track) {
+                        newLine(ptr);
+                    }
+                    inComment = false;
+                    escape = false;
+                } else if (inComment) {
+                    // skip
+                } else if (inString) {
+                    if (c == '"' && !escape) {
+                        inString = false;
+                    }
+                    escape = c == '\\' && !escape;
+                } else if (c == '"') {
+                    inString = true;
+                    escape = false;
+                } else if (c == '#') {
+                    inComment = true;
+                } else if (c == '{') {
+                    depth++;
+                } else if (c == '}' && --depth == 0) {
+                    _inputPtr = ptr;
+                    return;
+                }
+            }
+            _inputPtr = ptr;
+        }
+        _reportInvalidEOF(": reached end of file while skipping a scope", _currToken);
+    }
+
+    @Override
+    protected void readName() throws IOException {
+        boolean quoted = false;
+        boolean escape = false;
+        boolean ascii = true;
+        boolean gotName = false;
+
+        _markPtr = _inputPtr;
+        while (!gotName && (_inputPtr < _inputEnd || thereIsMore())) {
+            ByteBuffer input = _input;
+            int ptr = _inputPtr;
+            int end = _inputEnd;
+            while (ptr < end) {
+                int c = input.get(ptr) & 0xFF;
+                if (c == '"' && !escape) {
+                    quoted = !quoted;
+                } else if (c >= 0x80) {
+                    ascii = false;
+                    escape = false;
+                    if (!quoted) {
+                        // classified like in char parser (letters and ’)
+                        int len = nonAsciiChar(input, ptr, end, NAME | LETTER);
+                        if (len == 0) {
+                            gotName = true;
+                            break;
+                        }
+                        if (len < 0) {
+                            ptr = loadRestOfChar(ptr);
+                            break;
+                        }
+                        ptr += len;
+                        continue;
+                    }
+                } else if (!quoted && (TYPES[c] & NAME) == 0) {
+                    // token may use '"' (common/decisions/MEX.txt: "PAN" = {...)
+                    gotName = true;
+                    break;
+                }
+                escape = c == '\\';
+                ptr++;
+            }
+            _inputPtr = ptr;
+        }
+
+        decode(_markPtr, _inputPtr - _markPtr, ascii);
+        _markPtr = -1;
+    }
+
+    @Override
+    protected void readValue() throws IOException {
+        boolean escape = false;
+        boolean inString = false;
+        boolean ascii = true;
+        boolean gotValue = false;
+
+        _markPtr = _inputPtr;
+        while (!gotValue && (_inputPtr < _inputEnd || thereIsMore())) {
+            ByteBuffer input = _input;
+            int ptr = _inputPtr;
+            int end = _inputEnd;
+            while (ptr < end) {
+                int c = input.get(ptr) & 0xFF;
+                if (c == '\\') {
+                    escape = true;
+                } else {
+                    if (c == '"' && !escape) {
+                        inString = !inString;
+                        ptr++;
+                        continue;
+                    }
+                    escape = false;
+                }
+                if (c >= 0x80) {
+                    ascii = false;
+                    if (!inString) {
+                        int len = nonAsciiChar(input, ptr, end, VALUE);
+                        if (len == 0) {
+                            gotValue = true;
+                            break;
+                        }
+                        if (len < 0) {
+                            ptr = loadRestOfChar(ptr);
+                            break;
+                        }
+                        ptr += len;
+                        continue;
+                    }
+                } else if (!inString && (TYPES[c] & VALUE) == 0) {
+                    // end of value. let's allow newlines inside string
+                    gotValue = true;
+                    break;
+                }
+                ptr++;
+            }
+            _inputPtr = ptr;
+        }
+
+        int start = _markPtr;
+        if (inString && !gotValue && _input.get(start) == '"') {
+            // quote not closed before EOF - dropped like in char parser
+            start++;
+        }
+        decode(start, _inputPtr - start, ascii);
+        _markPtr = -1;
+    }
+
+    /**
+     * Non-ASCII character is reported (like in char parser) as decoded character, not its first byte.
+     */
+    @Override
+    protected void _reportUnexpectedChar(int ch, String comment) throws JsonParseException {
+        if (ch >= 0x80 && _inputPtr < _inputEnd && (_input.get(_inputPtr) & 0xFF) == ch) {
+            ch = codePointAt(_inputPtr);
+        }
+        super._reportUnexpectedChar(ch, comment);
+    }
+
+    /**
+     * Decodes single non-ASCII character (Windows-1252 or UTF-8) for error messages.
+     * @param ptr
+     * @return
+     */
+    private int codePointAt(int ptr) {
+        int c = _input.get(ptr) & 0xFF;
+        if (_windows1252) {
+            return WINDOWS_1252_CHARS[c];
+        }
+        int needed = (c & 0xE0) == 0xC0 ? 1 : (c & 0xF0) == 0xE0 ? 2 : (c & 0xF8) == 0xF0 ? 3 : -1;
+        if (needed < 0 || ptr + needed >= _inputEnd) {
+            return '\uFFFD';
+        }
+        c &= 0x3F >> needed;
+        for (int n = 1; n <= needed; n++) {
+            int b = _input.get(ptr + n) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                return '\uFFFD';
+            }
+            c = (c << 6) | (b & 0x3F);
+        }
+        return c;
+    }
+
+    @Override
+    protected boolean letter(int c) {
+        if (c < 0x80) {
+            return super.letter(c);
+        }
+        // first byte of non-ASCII character at current position - the same characters as in char parser may
+        // start a name
+        return nonAsciiChar(_input, _inputPtr, _inputEnd, NAME | LETTER) != 0;
+    }
+
+    /**
+     * Classifies non-ASCII character starting at given index using {@link Hoi4DbCharTypes#is(int, int)} - so
+     * byte and char parsers split tokens in the same places. The character is decoded as Windows-1252 or UTF-8.
+     * Malformed UTF-8 bytes are accepted (and later decoded as {@code U+FFFD}).
+     * @param input
+     * @param ptr
+     * @param end
+     * @param type
+     * @return length of the character in bytes if it has given type, {@code 0} if it doesn't have the type,
+     * {@code -1} if UTF-8 sequence is cut at the end of available data
+     */
+    private int nonAsciiChar(ByteBuffer input, int ptr, int end, int type) {
+        int c = input.get(ptr) & 0xFF;
+        if (_windows1252) {
+            return Hoi4DbCharTypes.is(WINDOWS_1252_CHARS[c], type) ? 1 : 0;
+        }
+        int needed;
+        if ((c & 0xE0) == 0xC0) {
+            c &= 0x1F;
+            needed = 1;
+        } else if ((c & 0xF0) == 0xE0) {
+            c &= 0x0F;
+            needed = 2;
+        } else if ((c & 0xF8) == 0xF0) {
+            c &= 0x07;
+            needed = 3;
+        } else {
+            return 1;
+        }
+        if (ptr + needed >= end) {
+            return -1;
+        }
+        for (int n = 1; n <= needed; n++) {
+            int b = input.get(ptr + n) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                return 1;
+            }
+            c = (c << 6) | (b & 0x3F);
+        }
+        return Hoi4DbCharTypes.is(c, type) ? needed + 1 : 0;
+    }
+
+    /**
+     * Reads more data when UTF-8 sequence starting at {@code ptr} is cut at the end of the buffer. Collected token
+     * (from {@link #_markPtr}) is kept.
+     * @param ptr
+     * @return new position of the sequence or end of data, when there's nothing more to read (incomplete sequence
+     * is then accepted as part of the token)
+     */
+    private int loadRestOfChar(int ptr) {
+        int offset = ptr - _markPtr;
+        _inputPtr = _inputEnd;
+        return thereIsMore() ? _markPtr + offset : _inputEnd;
+    }
+
+    /**
+     * Decodes collected bytes into {@link #_textBuffer}. ASCII-only data is decoded using trivial byte to char
+     * mapping and Windows-1252 data using a table. Malformed UTF-8 sequences are replaced with {@code U+FFFD}.
+     * @param start
+     * @param len
+     * @param ascii
+     */
+    private void decode(int start, int len, boolean ascii) {
+        // never more chars than bytes
+        char[] out = _textBuffer.emptyAndGetCurrentSegment();
+        if (out.length < len) {
+            out = _textBuffer.expandCurrentSegment(len);
+        }
+        int outPtr = 0;
+        int end = start + len;
+        if (ascii) {
+            for (int i = start; i < end; i++) {
+                out[outPtr++] = (char) _input.get(i);
+            }
+        } else if (_windows1252) {
+            for (int i = start; i < end; i++) {
+                out[outPtr++] = WINDOWS_1252_CHARS[_input.get(i) & 0xFF];
+            }
+        } else {
+            int i = start;
+            while (i < end) {
+                int c = _input.get(i++) & 0xFF;
+                if (c < 0x80) {
+                    out[outPtr++] = (char) c;
+                    continue;
+                }
+                int needed;
+                if ((c & 0xE0) == 0xC0) {
+                    c &= 0x1F;
+                    needed = 1;
+                } else if ((c & 0xF0) == 0xE0) {
+                    c &= 0x0F;
+                    needed = 2;
+                } else if ((c & 0xF8) == 0xF0) {
+                    c &= 0x07;
+                    needed = 3;
+                } else {
+                    out[outPtr++] = '\uFFFD';
+                    continue;
+                }
+                boolean valid = true;
+                for (int n = 0; n < needed; n++) {
+                    if (i == end || (_input.get(i) & 0xC0) != 0x80) {
+                        valid = false;
+                        break;
+                    }
+                    c = (c << 6) | (_input.get(i++) & 0x3F);
+                }
+                if (!valid) {
+                    out[outPtr++] = '\uFFFD';
+                } else if (c >= 0x10000) {
+                    c -= 0x10000;
+                    out[outPtr++] = (char) (0xD800 | (c >> 10));
+                    out[outPtr++] = (char) (0xDC00 | (c & 0x3FF));
+                } else {
+                    out[outPtr++] = (char) c;
+                }
+            }
+        }
+        _textBuffer.setCurrentLength(outPtr);
+    }
+
+}
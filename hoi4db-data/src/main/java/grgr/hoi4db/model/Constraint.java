@@ -23,6 +23,8 @@ import java.math.BigInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import grgr.hoi4db.dataformat.ConstrainedValue;
+
 /**
  * Class with great potential - could be treated as filter, validator, ...
  */
@@ -43,6 +45,26 @@ public class Constraint {
         parse(rawValue);
     }
 
+    /**
+     * Creates constraint from operator and number read by {@link grgr.hoi4db.dataformat.Hoi4DbParser}.
+     * @param name
+     * @param value
+     */
+    public Constraint(String name, ConstrainedValue value) {
+        this.name = name;
+        operation = Operation.of(value.getOperator());
+        Number n = value.getValue();
+        if (n instanceof BigDecimal) {
+            decimalValue = (BigDecimal) n;
+        } else if (n instanceof BigInteger) {
+            integerValue = (BigInteger) n;
+        } else if (n instanceof Double || n instanceof Float) {
+            decimalValue = BigDecimal.valueOf(n.doubleValue());
+        } else {
+            integerValue = BigInteger.valueOf(n.longValue());
+        }
+    }
+
     /**
      * Parses value from JSON parser, like {@code ((<2))}
      * @param rawValue
@@ -127,6 +149,24 @@ public class Constraint {
             this.op = op;
         }
 
+        /**
+         * Returns single-character operation.
+         * @param op
+         * @return
+         */
+        public static Operation of(char op) {
+            switch (op) {
+                case '<':
+                    return LT;
+                case '>':
+                    return GT;
+                case '=':
+                    return EQ;
+                default:
+                    throw new IllegalArgumentException("Can't determine operator for '" + op + "'");
+            }
+        }
+
         @Override
         public String toString() {
             return op;
@@ -96,6 +96,13 @@ public class Stat extends HasId {
         if (value instanceof BigInteger) {
             return new BigDecimal((BigInteger) value);
         }
+        // parser decodes numbers as int/long/double when there's no precision loss
+        if (value instanceof Integer || value instanceof Long) {
+            return BigDecimal.valueOf(value.longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(value.doubleValue());
+        }
         return null;
     }
 
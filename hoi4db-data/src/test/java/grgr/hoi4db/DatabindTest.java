@@ -18,18 +18,68 @@
  */
 package grgr.hoi4db;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import grgr.hoi4db.databind.Hoi4DbConstrainedValueNode;
+import grgr.hoi4db.dao.NavalData;
+import grgr.hoi4db.dao.Utils;
+import grgr.hoi4db.databind.Hoi4DbLazyReader;
+import grgr.hoi4db.databind.Hoi4DbMultiValueNode;
 import grgr.hoi4db.databind.Hoi4DbNodeFactory;
+import grgr.hoi4db.databind.Hoi4DbParallelReader;
+import grgr.hoi4db.dataformat.ConstrainedValue;
 import grgr.hoi4db.dataformat.Hoi4DbFactory;
+import grgr.hoi4db.dataformat.Hoi4DbTokenCache;
+import grgr.hoi4db.model.Constraint;
+import grgr.hoi4db.model.naval.Module;
+import grgr.hoi4db.model.naval.ModuleCategory;
+import grgr.hoi4db.model.naval.ShipCategory;
+import grgr.hoi4db.model.naval.ShipHull;
+import grgr.hoi4db.model.upgrades.NavalUpgrade;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 public class DatabindTest {
 
     public static Logger LOG = LoggerFactory.getLogger(DatabindTest.class);
@@ -65,4 +115,558 @@ public class DatabindTest {
         mapper.writer(new DefaultPrettyPrinter()).writeValue(System.out, tree);
     }
 
+    @Test
+    public void numbersAsPrimitives() throws IOException {
+        String data = "a = 42 b = -7 c = 0.35 d = 12345678901 e = 123456789012345678901 f = +1.5 g = 1936.1.1 h = 0.1234567890123456789";
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        for (boolean bytes : new boolean[] { true, false }) {
+            JsonNode tree = bytes ? mapper.readTree(data.getBytes(StandardCharsets.UTF_8)) : mapper.readTree(data);
+            assertTrue(tree.get("a").isInt());
+            assertEquals(42, tree.get("a").intValue());
+            assertTrue(tree.get("b").isInt());
+            assertEquals(-7, tree.get("b").intValue());
+            assertTrue(tree.get("c").isDouble());
+            assertEquals(0.35d, tree.get("c").doubleValue());
+            assertTrue(tree.get("d").isLong());
+            assertTrue(tree.get("e").isBigInteger());
+            assertEquals(new BigInteger("123456789012345678901"), tree.get("e").bigIntegerValue());
+            assertEquals(1.5d, tree.get("f").doubleValue());
+            assertTrue(tree.get("g").isTextual());
+            assertTrue(tree.get("h").isBigDecimal());
+            assertEquals(new BigDecimal("0.1234567890123456789"), tree.get("h").decimalValue());
+        }
+
+        try (JsonParser parser = mapper.getFactory().createParser("v = 0.35".getBytes(StandardCharsets.UTF_8))) {
+            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+            assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+            assertEquals(JsonToken.VALUE_NUMBER_FLOAT, parser.nextToken());
+            assertEquals(new BigDecimal("0.35"), parser.getDecimalValue());
+            assertEquals("0.35", parser.getText());
+        }
+    }
+
+    @Test
+    public void compactObjectNodes() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        ObjectMapper compactMapper = new ObjectMapper(new Hoi4DbFactory());
+        compactMapper.setNodeFactory(Hoi4DbNodeFactory.compact());
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            // enough fields for the index, with duplicates
+            sb.append("field").append(i % 20).append(" = { value = ").append(i).append(" }\n");
+        }
+        for (String sample : new String[] { "/samples/lists.txt", "/samples/duplicates.txt", "/samples/history.txt" }) {
+            sb.append(new String(Files.readAllBytes(Paths.get(getClass().getResource(sample).getPath())), StandardCharsets.UTF_8));
+        }
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        JsonNode expected = mapper.readTree(data);
+        JsonNode tree = Hoi4DbNodeFactory.freeze(compactMapper.readTree(data));
+        assertEquals(expected.toString(), tree.toString());
+        assertEquals(expected, tree);
+        assertEquals(3, tree.get("field7").size());
+        assertThrows(UnsupportedOperationException.class, () -> ((ObjectNode) tree).put("x", 1));
+        assertThrows(UnsupportedOperationException.class, () -> ((ObjectNode) tree.get("field7").get(0)).remove("value"));
+
+        // not frozen yet
+        ObjectNode modified = (ObjectNode) compactMapper.readTree(data);
+        modified.retain("field1", "field2", "field3");
+        modified.remove("field2");
+        List<String> names = new ArrayList<>();
+        modified.fieldNames().forEachRemaining(names::add);
+        assertEquals(Arrays.asList("field1", "field3"), names);
+    }
+
+    @Test
+    public void multiValueFields() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        String data = "name = a\nname = b\nlist = { a b }\nsingle = c\nscope = {\n\tv = 1\n}\nscope = {\n\tv = 2\n}\n";
+        JsonNode tree = mapper.readTree(data);
+
+        assertTrue(tree.get("name") instanceof Hoi4DbMultiValueNode);
+        assertTrue(tree.get("scope") instanceof Hoi4DbMultiValueNode);
+        assertFalse(tree.get("list") instanceof Hoi4DbMultiValueNode);
+        assertTrue(tree.get("list").isArray());
+
+        assertEquals(Arrays.asList("a", "b"), texts(Utils.asList(tree.get("name"))));
+        assertEquals(Arrays.asList("a", "b"), texts(Utils.asList(tree.get("list"))));
+        assertEquals(Collections.singletonList("c"), texts(Utils.asList(tree.get("single"))));
+        assertTrue(Utils.asList(tree.get("missing")).isEmpty());
+        // a view, not a copy
+        assertSame(Utils.asList(tree.get("name")), Utils.asList(tree.get("name")));
+        assertThrows(UnsupportedOperationException.class, () -> Utils.asList(tree.get("name")).clear());
+
+        // repeated fields and literal arrays are written back as they were read
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mapper.writeValue(out, tree);
+        assertEquals(data, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void duplicatesOfLiteralArrayAreItsItems() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        String data = "list = { a b }\nlist = c\nlist = d\n"
+                + "lists = { a b }\nlists = { c d }\nlists = e\n"
+                + "mixed = 1\nmixed = { a b }\n"
+                + "scope = { a b }\nscope = { c = 1 }\n";
+        for (JsonNode tree : Arrays.asList(mapper.readTree(data),
+                new Hoi4DbLazyReader(mapper).readTree(data.getBytes(StandardCharsets.UTF_8)))) {
+            assertFalse(tree.get("list") instanceof Hoi4DbMultiValueNode);
+            assertEquals(Arrays.asList("a", "b", "c", "d"), texts(Utils.asList(tree.get("list"))));
+
+            // arrays and objects are never items of literal arrays, whichever value comes first
+            assertTrue(tree.get("lists") instanceof Hoi4DbMultiValueNode);
+            assertEquals("[[\"a\",\"b\"],[\"c\",\"d\"],\"e\"]", tree.get("lists").toString());
+            assertTrue(tree.get("mixed") instanceof Hoi4DbMultiValueNode);
+            assertEquals("[1,[\"a\",\"b\"]]", tree.get("mixed").toString());
+            assertTrue(tree.get("scope") instanceof Hoi4DbMultiValueNode);
+            assertEquals("[[\"a\",\"b\"],{\"c\":1}]", tree.get("scope").toString());
+        }
+    }
+
+    @Test
+    public void valuesOfNodesAreNotCreatedAgain() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        JsonNode tree = mapper.readTree("list = { a b }\nscope = { c = 1 }\nname = a\nname = b\n");
+        for (String field : new String[] { "list", "scope", "name" }) {
+            assertSame(Utils.asList(tree.get(field)), Utils.asList(tree.get(field)), field);
+            assertThrows(UnsupportedOperationException.class, () -> Utils.asList(tree.get(field)).clear(), field);
+        }
+        assertEquals(Arrays.asList("a", "b"), texts(Utils.asList(tree.get("list"))));
+        assertEquals(Collections.singletonList(tree.get("scope")), Utils.asList(tree.get("scope")));
+        assertEquals(tree.get("list"), tree.get("list").deepCopy());
+        assertTrue(tree.get("name").deepCopy() instanceof Hoi4DbMultiValueNode);
+    }
+
+    private static List<String> texts(List<JsonNode> nodes) {
+        List<String> texts = new ArrayList<>();
+        for (JsonNode n : nodes) {
+            texts.add(n.asText());
+        }
+        return texts;
+    }
+
+    @Test
+    public void bindNavalDefinitionsFromTokens() throws Exception {
+        NavalData nd = new NavalData(Paths.get(getClass().getResource("/hoi4").toURI()).toFile());
+
+        Map<String, Module> modules = new HashMap<>();
+        nd.modules().forEach(m -> modules.put(m.getId(), m));
+        Module battery = modules.get("ship_light_battery_2");
+        assertEquals(ModuleCategory.SHIP_LIGHT_BATTERY, battery.getCategory());
+        assertEquals("ship_light_battery_1", battery.getParentId());
+        assertEquals("[lg_attack: +4.00, lg_armor_piercing: +6.50, reliability: +0.10, naval_speed: ~+1.00]",
+                battery.getStats().toString());
+        assertEquals(2, battery.getConversions().size());
+        assertEquals("gfx_ship_light_battery_1", modules.get("ship_light_battery_1").getGfx());
+
+        Map<String, ShipHull> hulls = new HashMap<>();
+        nd.hulls().forEach(sh -> hulls.put(sh.getId(), sh));
+        // archetypes are not listed
+        assertEquals(7, hulls.size());
+        ShipHull light = hulls.get("ship_hull_light_2");
+        assertEquals(1940, light.getYear());
+        assertEquals("ship_hull_light_1", light.getParentId());
+        assertEquals(Arrays.asList("screen_ship", "anti_air"), light.getTypes());
+        assertEquals(new BigDecimal("10.5"), light.getSurfaceDetection());
+        assertEquals(BigInteger.valueOf(300), light.getManpower());
+        assertEquals(2, light.getModuleLimits().size());
+        assertEquals(Arrays.asList("fixed_ship_battery_slot", "fixed_ship_engine_slot", "front_1_custom_slot"),
+                new ArrayList<>(light.getSlots().keySet()));
+        assertEquals("ship_anti_air_1", light.getModules().get("front_1_custom_slot").getId());
+        assertEquals(ShipCategory.HEAVY_CRUISER, hulls.get("ship_hull_cruiser_1").getCategory());
+        assertEquals(ShipCategory.LIGHT_CRUISER, hulls.get("ship_hull_cruiser_2").getCategory());
+        assertEquals(ShipCategory.BATTLESHIP, hulls.get("ship_hull_heavy_1").getCategory());
+
+        List<NavalUpgrade> upgrades = nd.upgrades();
+        assertEquals(4, upgrades.size());
+        NavalUpgrade gun = upgrades.stream().filter(u -> u.getId().equals("ship_gun_upgrade")).findFirst().get();
+        assertEquals(4, gun.getMaxLevel());
+        assertEquals(new BigDecimal("0.05"), gun.getHeavyArmorPiercing());
+    }
+
+    @Test
+    public void bindNavalDefinitionsLikeTrees() throws Exception {
+        NavalData nd = new NavalData(Paths.get(getClass().getResource("/hoi4").toURI()).toFile());
+        // every hull, module and upgrade of the fixture, as bound from JsonNode trees before binding from tokens
+        // (with gfx stored as gfx)
+        String expected = new String(Files.readAllBytes(Paths.get(getClass().getResource("/hoi4/naval-tree-binding.json").toURI())),
+                StandardCharsets.UTF_8);
+        ObjectMapper json = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        String actual = json.writeValueAsString(sorted(nd.hulls(), ShipHull::getId))
+                + json.writeValueAsString(sorted(nd.modules(), Module::getId))
+                + json.writeValueAsString(sorted(nd.upgrades(), NavalUpgrade::getId));
+        assertEquals(expected, actual);
+    }
+
+    private static <T> List<T> sorted(List<T> list, Function<T, String> id) {
+        List<T> sorted = new ArrayList<>(list);
+        sorted.sort(Comparator.comparing(id));
+        return sorted;
+    }
+
+    @Test
+    public void parallelReadLikeSingleParser() throws IOException {
+        StringBuilder sb = new StringBuilder("# header\nversion = 3\n");
+        for (int i = 0; i < 200; i++) {
+            sb.append("scope").append(i % 7).append(" = {\n");
+            sb.append("  name = \"with } brace\" # and { in comment\n");
+            sb.append("  items = { a").append(i).append(" b c }\n");
+            sb.append("  nested = { value = ").append(i).append(" other = { x = 1.5 } }\n");
+            sb.append("}\n");
+            if (i % 10 == 0) {
+                sb.append("simple = ").append(i).append("\n");
+            }
+        }
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        JsonNode expected = mapper.readTree(data);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            JsonNode tree = new Hoi4DbParallelReader(mapper, pool, 100).readTree(data);
+            assertEquals(expected.toString(), tree.toString());
+            assertEquals(200, tree.get("scope0").size() * 7 - 3);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelReadReportsErrorLikeSingleParser() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("scope").append(i).append(" = {\n  value = ").append(i).append(i == 150 ? " ]" : "").append("\n}\n");
+        }
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        JsonProcessingException expected = assertThrows(JsonProcessingException.class, () -> mapper.readTree(data));
+        assertEquals(452, expected.getLocation().getLineNr());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            JsonProcessingException e = assertThrows(JsonProcessingException.class,
+                    () -> new Hoi4DbParallelReader(mapper, pool, 100).readTree(data));
+            assertEquals(expected.getLocation().getLineNr(), e.getLocation().getLineNr());
+            assertEquals(expected.getLocation().getColumnNr(), e.getLocation().getColumnNr());
+            assertEquals(expected.getLocation().getByteOffset(), e.getLocation().getByteOffset());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelReadDetectsCharsetOnce() throws IOException {
+        // only the first chunk isn't valid UTF-8, "Ã©" in other chunks is valid UTF-8 in Windows-1252 bytes
+        StringBuilder sb = new StringBuilder("first = { name = \"Café\" }\n");
+        for (int i = 0; i < 200; i++) {
+            sb.append("scope").append(i).append(" = { name = \"CafÃ©\" value = ").append(i).append(" }\n");
+        }
+        byte[] data = sb.toString().getBytes(Charset.forName("windows-1252"));
+
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        JsonNode expected = mapper.readTree(data);
+        assertEquals("CafÃ©", expected.get("scope199").get("name").textValue());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            JsonNode tree = new Hoi4DbParallelReader(mapper, pool, 100).readTree(data);
+            assertEquals(expected, tree);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void lazyReadLikeSingleParser() throws IOException {
+        StringBuilder sb = new StringBuilder("# header\nversion = 3\n");
+        for (int i = 0; i < 20; i++) {
+            sb.append("scope").append(i % 7).append(" = {\n");
+            sb.append("  name = \"with } brace\" # and { in comment\n");
+            sb.append("  items = { a").append(i).append(" b c }\n");
+            sb.append("}\n");
+        }
+        sb.append("list = { 1 2 3 }\nsimple = 1\nsimple = { a = 2 }\nlast = yes");
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(Hoi4DbNodeFactory.compact());
+        JsonNode expected = Hoi4DbNodeFactory.freeze(mapper.readTree(data));
+
+        JsonNode tree = new Hoi4DbLazyReader(mapper).readTree(data);
+        List<String> names = new ArrayList<>();
+        tree.fieldNames().forEachRemaining(names::add);
+        assertEquals(Arrays.asList("version", "scope0", "scope1", "scope2", "scope3", "scope4", "scope5", "scope6",
+                "list", "simple", "last"), names);
+        assertEquals(9, Hoi4DbLazyReader.pendingFields(tree));
+
+        // only accessed scopes are parsed (once)
+        assertEquals("a13", tree.get("scope6").get(1).get("items").get(0).asText());
+        assertSame(tree.get("scope6"), tree.get("scope6"));
+        assertEquals(8, Hoi4DbLazyReader.pendingFields(tree));
+        assertTrue(tree.get("simple") instanceof Hoi4DbMultiValueNode);
+        assertEquals(2, tree.get("simple").get(1).get("a").asInt());
+
+        assertEquals(expected.toString(), tree.toString());
+        assertEquals(expected, tree);
+        assertEquals(0, Hoi4DbLazyReader.pendingFields(tree));
+        assertThrows(UnsupportedOperationException.class, () -> ((ObjectNode) tree).put("x", 1));
+    }
+
+    @Test
+    public void tokenCacheReadsLikeParser(@TempDir Path dir) throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        Path file = dir.resolve("history.txt");
+        Files.copy(Paths.get(getClass().getResource("/samples/history.txt").toURI()), file);
+        Hoi4DbTokenCache cache = new Hoi4DbTokenCache(factory, dir.resolve("cache"));
+
+        JsonNode expected = mapper.readTree(file.toFile());
+        for (int i = 0; i < 2; i++) {
+            try (JsonParser parser = cache.createParser(file)) {
+                // nodes, not texts - toString() gives the same "((> 5))" for constrained value and for a string
+                assertEquals(expected, mapper.readTree(parser));
+            }
+        }
+        assertEquals(1L, cache.getMissCount());
+        assertEquals(1L, cache.getHitCount());
+
+        // same content
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 60_000L));
+        try (JsonParser parser = cache.createParser(file)) {
+            assertEquals(expected, mapper.readTree(parser));
+        }
+        assertEquals(1L, cache.getMissCount());
+
+        // changed content
+        Files.write(file, "extra = 42\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (JsonParser parser = cache.createParser(file)) {
+            JsonNode tree = mapper.readTree(parser);
+            assertEquals(42, tree.get("extra").intValue());
+        }
+        assertEquals(2L, cache.getMissCount());
+    }
+
+    @Test
+    public void tokenCacheReturnsCanonicalNamesAndValues(@TempDir Path dir) throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory().setValueDeduplication(32);
+        ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        Path file = dir.resolve("history.txt");
+        Files.copy(Paths.get(getClass().getResource("/samples/history.txt").toURI()), file);
+        Hoi4DbTokenCache cache = new Hoi4DbTokenCache(factory, dir.resolve("cache"));
+
+        JsonNode parsed = mapper.readTree(file.toFile());
+        List<JsonNode> trees = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            try (JsonParser parser = cache.createParser(file)) {
+                trees.add(mapper.readTree(parser));
+            }
+        }
+        assertEquals(1L, cache.getHitCount());
+        for (JsonNode tree : trees) {
+            // the same instances as returned by the parser
+            assertSame(firstFieldName(parsed), firstFieldName(tree));
+            assertSame(parsed.get("oob").textValue(), tree.get("oob").textValue());
+        }
+    }
+
+    private static String firstFieldName(JsonNode tree) {
+        return tree.fieldNames().next();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "arrays", "duplicates", "lists", "noroot", "objectinarray", "operators", "repeatedarrays", "scopes", "values", "whitespace", "history" })
+    public void writeTreeReadsBackTheSame(String sample) throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        JsonNode tree = mapper.readTree(getClass().getResourceAsStream("/samples/" + sample + ".txt"));
+
+        byte[] bytes = mapper.writeValueAsBytes(tree);
+        String text = mapper.writeValueAsString(tree);
+        LOG.info("{}:\n{}", sample, text);
+        assertEquals(text, new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(tree, mapper.readTree(bytes));
+    }
+
+    @Test
+    public void scopesInsideSingleLineArraysAreReadableOrRejected() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        ObjectNode tree = mapper.createObjectNode();
+        tree.putArray("x").add("b").addObject().putObject("a").put("c", 1);
+        assertEquals(tree, mapper.readTree(mapper.writeValueAsString(tree)));
+
+        // parser reads only objects as fields of objects inside single line arrays
+        ObjectNode nested = mapper.createObjectNode();
+        nested.putArray("x").add("a").add("b").addArray().add("c").add("d");
+        ObjectNode scalarField = mapper.createObjectNode();
+        scalarField.putArray("x").add("b").add("c").addObject().put("a", 1);
+        ObjectNode arrayField = mapper.createObjectNode();
+        arrayField.putArray("x").add("b").addObject().putArray("a").add("c").add("d");
+        ObjectNode emptyField = mapper.createObjectNode();
+        emptyField.putArray("x").add("b").addObject().putObject("a");
+        for (ObjectNode broken : new ObjectNode[] { nested, scalarField, arrayField, emptyField }) {
+            assertThrows(JsonGenerationException.class, () -> mapper.writeValueAsString(broken), broken.toString());
+        }
+    }
+
+    @Test
+    public void quotesInValuesReadBackTheSame() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        ObjectNode tree = (ObjectNode) mapper.readTree("name = \"The \\\"Mighty\\\" One\"");
+        assertEquals("The \"Mighty\" One", tree.get("name").textValue());
+
+        tree.put("quoted", "\"quoted\"");
+        tree.put("backslash", "a\\b \\\" c");
+        tree.putArray("items").add("x\"y").add("z");
+        tree.put("path", "C:\\dir\\file.txt");
+        String text = mapper.writeValueAsString(tree);
+        for (JsonNode read : new JsonNode[] { mapper.readTree(text), mapper.readTree(text.getBytes(StandardCharsets.UTF_8)) }) {
+            assertEquals(tree, read);
+        }
+
+        // closing quote after a backslash would be read as escaped one - and next fields would become part of
+        // the value
+        for (String path : new String[] { "C:\\dir\\", "C:\\dir\\\\" }) {
+            ObjectNode broken = mapper.createObjectNode().put("path", path).put("next", "x");
+            assertThrows(JsonGenerationException.class, () -> mapper.writeValueAsString(broken), path);
+        }
+    }
+
+    @Test
+    public void constrainedValues() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(new Hoi4DbFactory());
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        JsonNode tree = mapper.readTree("limit = { count < 2 ratio > 0.25 }");
+
+        JsonNode count = tree.get("limit").get("count");
+        assertTrue(count instanceof Hoi4DbConstrainedValueNode);
+        assertEquals(new ConstrainedValue('<', 2), ((Hoi4DbConstrainedValueNode) count).getConstrainedValue());
+        Constraint c = new Constraint("count", ((Hoi4DbConstrainedValueNode) count).getConstrainedValue());
+        assertEquals(Constraint.Operation.LT, c.getOperation());
+        assertEquals(BigInteger.valueOf(2), c.getIntegerValue());
+
+        c = new Constraint("ratio", ((Hoi4DbConstrainedValueNode) tree.get("limit").get("ratio")).getConstrainedValue());
+        assertEquals(Constraint.Operation.GT, c.getOperation());
+        assertEquals(new BigDecimal("0.25"), c.getDecimalValue());
+
+        assertEquals("limit = {\n\tcount < 2\n\tratio > 0.25\n}\n", mapper.writeValueAsString(tree));
+
+        // String looking like ConstrainedValue.toString() is still a String
+        ObjectNode text = mapper.createObjectNode().put("count", "((< 2))");
+        assertEquals("count = \"((< 2))\"\n", mapper.writeValueAsString(text));
+        assertEquals(text, mapper.readTree(mapper.writeValueAsString(text)));
+
+        // numbers are boxed primitives unless they don't fit
+        String data = "a < 3000000000 b > -0.25 c < 123456789012345678901 d > 0.1234567890123456789";
+        for (boolean bytes : new boolean[] { true, false }) {
+            JsonNode values = bytes ? mapper.readTree(data.getBytes(StandardCharsets.UTF_8)) : mapper.readTree(data);
+            assertEquals(3000000000L, values.get("a").numberValue());
+            assertEquals(-0.25d, values.get("b").numberValue());
+            assertEquals(new BigInteger("123456789012345678901"), values.get("c").numberValue());
+            assertEquals(new BigDecimal("0.1234567890123456789"), values.get("d").numberValue());
+            assertEquals(new BigDecimal("-0.25"), values.get("b").decimalValue());
+            assertEquals("a < 3000000000\nb > -0.25\nc < 123456789012345678901\nd > 0.1234567890123456789\n",
+                    mapper.writeValueAsString(values));
+        }
+    }
+
+    @Test
+    public void copyTokens() throws IOException {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonParser parser = factory.createParser(getClass().getResourceAsStream("/samples/scopes.txt"));
+             JsonGenerator generator = factory.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        assertEquals("equipments = {\n"
+                + "\tship_hull_submarine = {\n"
+                + "\t\tyear = 1922\n"
+                + "\t\tis_archetype = yes\n"
+                + "\t\tupgrades = { ship_reliability_upgrade sub_engine_upgrade sub_stealth_upgrade sub_torpedo_upgrade }\n"
+                + "\t\tinterface_category = interface_category_other_ships\n"
+                + "\t\tmodule_slots = {\n"
+                + "\t\t\tfixed_ship_torpedo_slot = {\n"
+                + "\t\t\t\trequired = yes\n"
+                + "\t\t\t\tallowed_module_categories = { ship_torpedo_sub }\n"
+                + "\t\t\t}\n"
+                + "\t\t}\n"
+                + "\t\tmodule_count_limit = {\n"
+                + "\t\t\tcategory = ship_radar\n"
+                + "\t\t\tcount < 2\n"
+                + "\t\t}\n"
+                + "\t}\n"
+                + "}\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writeToStreamLikeToWriter() throws IOException {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringWriter writer = new StringWriter();
+        char[] name = "«Ørsted» \"Brønnøysund\" 𝄞".toCharArray();
+        byte[] utf8 = "«Ørsted» \"Brønnøysund\" 𝄞".getBytes(StandardCharsets.UTF_8);
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            longValue.append("ø𝄞");
+        }
+        byte[] longUtf8 = longValue.toString().getBytes(StandardCharsets.UTF_8);
+        for (JsonGenerator generator : new JsonGenerator[] { factory.createGenerator(out), factory.createGenerator(writer) }) {
+            generator.writeStartObject();
+            // more than the output buffer, so it's flushed many times
+            for (int i = 0; i < 2000; i++) {
+                generator.writeFieldName("n" + i);
+                generator.writeStartObject();
+                generator.writeNumberField("int", i % 2 == 0 ? Integer.MIN_VALUE : i);
+                generator.writeNumberField("long", i % 2 == 0 ? Long.MAX_VALUE : -i);
+                generator.writeNumberField("double", i % 2 == 0 ? 1e-7d : i / 4d);
+                generator.writeNumberField("float", i % 2 == 0 ? 1e10f : i / 8f);
+                generator.writeFieldName("name");
+                generator.writeString(name, 1, name.length - 1);
+                generator.writeFieldName("utf8");
+                generator.writeUTF8String(utf8, 2, utf8.length - 2);
+                generator.writeEndObject();
+            }
+            generator.writeFieldName("plain");
+            generator.writeUTF8String("d’Artagnan".getBytes(StandardCharsets.UTF_8), 0, 12);
+            generator.writeFieldName("keyword");
+            generator.writeUTF8String("Yes".getBytes(StandardCharsets.UTF_8), 0, 3);
+            // more than the output buffer in one value
+            generator.writeFieldName("long");
+            generator.writeUTF8String(longUtf8, 0, longUtf8.length);
+            generator.writeEndObject();
+            generator.close();
+        }
+        String text = writer.toString();
+        assertEquals(text, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(text.startsWith("n0 = {\n\tint = -2147483648\n\tlong = 9223372036854775807\n\tdouble = 0.00000010\n"
+                + "\tfloat = 10000000000\n\tname = \"Ørsted» \\\"Brønnøysund\\\" 𝄞\"\n"
+                + "\tutf8 = \"Ørsted» \\\"Brønnøysund\\\" 𝄞\"\n}\nn1 = {\n\tint = 1\n\tlong = -1\n"
+                + "\tdouble = 0.25\n\tfloat = 0.125\n"), text);
+
+        ObjectMapper mapper = new ObjectMapper(factory);
+        JsonNode tree = mapper.readTree(text);
+        assertEquals("Ørsted» \"Brønnøysund\" 𝄞", tree.get("n1999").get("name").textValue());
+        assertEquals(-1999L, tree.get("n1999").get("long").longValue());
+        assertEquals("Ørsted» \"Brønnøysund\" 𝄞", tree.get("n1999").get("utf8").textValue());
+        assertTrue(text.contains("\nplain = d’Artagnan\nkeyword = \"Yes\"\n"), text.substring(text.length() - 100));
+        assertEquals(longValue.toString(), tree.get("long").textValue());
+    }
+
 }
@@ -18,19 +18,52 @@
  */
 package grgr.hoi4db;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import grgr.hoi4db.databind.Hoi4DbNodeFactory;
+import grgr.hoi4db.dataformat.Hoi4DbBufferPool;
 import grgr.hoi4db.dataformat.Hoi4DbFactory;
+import grgr.hoi4db.dataformat.Hoi4DbParser;
+import grgr.hoi4db.dataformat.Hoi4DbPathFilter;
+import grgr.hoi4db.dataformat.Hoi4DbSymbolTable;
+import grgr.hoi4db.dataformat.Hoi4DbUTF8StreamParser;
 import jdk.nashorn.internal.ir.annotations.Ignore;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ExtractTest {
 
@@ -98,6 +131,418 @@ public class ExtractTest {
         parser.close();
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = { "arrays", "duplicates", "lists", "noroot", "objectinarray", "operators", "scopes", "values", "whitespace", "history" })
+    public void readBytesLikeChars(String sample) throws Exception {
+        JsonFactory factory = new Hoi4DbFactory();
+        List<String> fromChars;
+        List<String> fromBytes;
+        try (InputStream is = getClass().getResourceAsStream("/samples/" + sample + ".txt")) {
+            fromChars = events(factory.createParser(new InputStreamReader(is, StandardCharsets.UTF_8)));
+        }
+        try (InputStream is = getClass().getResourceAsStream("/samples/" + sample + ".txt")) {
+            JsonParser parser = factory.createParser(is);
+            assertTrue(parser instanceof Hoi4DbUTF8StreamParser);
+            fromBytes = events(parser);
+        }
+        assertEquals(fromChars, fromBytes);
+        try (InputStream is = getClass().getResourceAsStream("/samples/" + sample + ".txt")) {
+            // names and values split across many reads
+            fromBytes = events(factory.createParser(new FilterInputStream(is) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return super.read(b, off, Math.min(len, 3));
+                }
+            }));
+        }
+        assertEquals(fromChars, fromBytes);
+        // memory mapped
+        fromBytes = events(factory.createParser(new File(getClass().getResource("/samples/" + sample + ".txt").toURI())));
+        assertEquals(fromChars, fromBytes);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "arrays", "duplicates", "lists", "noroot", "objectinarray", "operators", "scopes", "values", "whitespace", "history" })
+    public void readNonAsciiBytesLikeChars(String sample) throws Exception {
+        JsonFactory factory = new Hoi4DbFactory();
+        byte[] data = Files.readAllBytes(new File(getClass().getResource("/samples/" + sample + ".txt").toURI()).toPath());
+        // non-ASCII letters and apostrophe in names and items, other punctuation in quotes
+        String text = new String(data, StandardCharsets.UTF_8)
+                + "\nnon_ascii = {\n\tD’Artagnan = \"Sø – «x» …\"\n\tÉlan = { Ørsted Brønnøysund D’Arc }\n}\n";
+        List<String> fromChars = events(factory.createParser(text));
+
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        assertEquals(fromChars, events(factory.createParser(utf8)));
+        assertEquals(fromChars, events(factory.createParser(new FilterInputStream(new ByteArrayInputStream(utf8)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                // multi-byte sequences split across reads
+                return super.read(b, off, Math.min(len, 1));
+            }
+        })));
+        assertEquals(fromChars, events(factory.createParser(text.getBytes(Charset.forName("windows-1252")))));
+
+        // punctuation other than ’ isn't part of names in any parser
+        String broken = text + "broken = { Amé«dée }\n";
+        assertThrows(JsonParseException.class, () -> events(factory.createParser(broken)));
+        assertThrows(JsonParseException.class, () -> events(factory.createParser(broken.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "arrays", "duplicates", "lists", "noroot", "objectinarray", "operators", "scopes", "values", "whitespace", "history" })
+    public void readFedBytesLikeChars(String sample) throws Exception {
+        JsonFactory factory = new Hoi4DbFactory();
+        List<String> fromChars;
+        try (InputStream is = getClass().getResourceAsStream("/samples/" + sample + ".txt")) {
+            fromChars = events(factory.createParser(new InputStreamReader(is, StandardCharsets.UTF_8)));
+        }
+        byte[] data = Files.readAllBytes(new File(getClass().getResource("/samples/" + sample + ".txt").toURI()).toPath());
+        for (int chunk : new int[] { 1, 2, 7, 64, data.length }) {
+            JsonParser parser = factory.createNonBlockingByteArrayParser();
+            ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            List<String> fromFeeder = new LinkedList<>();
+            int offset = 0;
+            JsonToken t;
+            while ((t = parser.nextToken()) != null) {
+                if (t == JsonToken.NOT_AVAILABLE) {
+                    assertTrue(feeder.needMoreInput());
+                    if (offset < data.length) {
+                        int end = Math.min(data.length, offset + chunk);
+                        feeder.feedInput(data, offset, end);
+                        offset = end;
+                    } else {
+                        feeder.endOfInput();
+                    }
+                    continue;
+                }
+                fromFeeder.add(t + ": " + parser.currentName() + " = " + parser.getCurrentValue());
+            }
+            parser.close();
+            assertEquals(fromChars, fromFeeder, "chunk size " + chunk);
+        }
+    }
+
+    @Test
+    public void bytesReadLikeCharsAtBrokenInput() throws Exception {
+        JsonFactory factory = new Hoi4DbFactory();
+        for (String input : new String[] { "a = \"abc", "a = { b = \"c }" }) {
+            assertEquals(events(factory.createParser(new StringReader(input))),
+                    events(factory.createParser(input.getBytes(StandardCharsets.UTF_8))), input);
+        }
+        // non-breaking space
+        String input = "a\u00a0= 1";
+        JsonParseException fromChars = assertThrows(JsonParseException.class, () -> events(factory.createParser(new StringReader(input))));
+        JsonParseException fromBytes = assertThrows(JsonParseException.class, () -> events(factory.createParser(input.getBytes(StandardCharsets.UTF_8))));
+        assertTrue(fromBytes.getOriginalMessage().contains("(code 160)"), fromBytes.getOriginalMessage());
+        assertEquals(fromChars.getOriginalMessage(), fromBytes.getOriginalMessage());
+    }
+
+    @Test
+    public void fedBytesKeepArrayIndexes() throws Exception {
+        JsonFactory factory = new Hoi4DbFactory();
+        byte[] data = "a = { x y \"z z\" } b = { w c = { d = 1 } v e = { 1 2 } } # end\nf = 3".getBytes(StandardCharsets.UTF_8);
+        List<String> expected = new LinkedList<>();
+        try (JsonParser parser = factory.createParser(data)) {
+            JsonToken t;
+            while ((t = parser.nextToken()) != null) {
+                expected.add(t + "@" + parser.getParsingContext().getCurrentIndex());
+            }
+        }
+        // named objects inside the array are items too
+        assertEquals(Arrays.asList("START_OBJECT@0",
+                "FIELD_NAME@0", "START_ARRAY@0", "VALUE_STRING@0", "VALUE_STRING@1", "VALUE_STRING@2", "END_ARRAY@0",
+                "FIELD_NAME@1", "START_ARRAY@0", "VALUE_STRING@0",
+                "START_OBJECT@1", "FIELD_NAME@1", "START_OBJECT@0", "FIELD_NAME@0", "VALUE_NUMBER_INT@0", "END_OBJECT@1", "END_OBJECT@1",
+                "VALUE_STRING@2",
+                "START_OBJECT@3", "FIELD_NAME@3", "START_ARRAY@0", "VALUE_NUMBER_INT@0", "VALUE_NUMBER_INT@1", "END_ARRAY@3", "END_ARRAY@1",
+                "FIELD_NAME@2", "VALUE_NUMBER_INT@2", "END_OBJECT@0"), expected);
+
+        JsonParser parser = factory.createNonBlockingByteArrayParser();
+        ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        List<String> fed = new LinkedList<>();
+        int offset = 0;
+        JsonToken t;
+        while ((t = parser.nextToken()) != null) {
+            if (t == JsonToken.NOT_AVAILABLE) {
+                if (offset < data.length) {
+                    feeder.feedInput(data, offset, ++offset);
+                } else {
+                    feeder.endOfInput();
+                }
+                continue;
+            }
+            fed.add(t + "@" + parser.getParsingContext().getCurrentIndex());
+        }
+        parser.close();
+        assertEquals(expected, fed);
+    }
+
+    @Test
+    public void skipChildrenOfFedScope() throws Exception {
+        JsonFactory factory = new Hoi4DbFactory();
+        byte[] data = "a = { x y } b = { c = { d = 1 } e = { 1 2 } } f = 3".getBytes(StandardCharsets.UTF_8);
+        List<String> expected = skippingEvents(factory.createParser(data), 2, false);
+
+        // whole input is fed
+        JsonParser parser = factory.createNonBlockingByteArrayParser();
+        ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        feeder.feedInput(data, 0, data.length);
+        feeder.endOfInput();
+        assertEquals(expected, skippingEvents(parser, 2, true));
+
+        // skipped scope is fed, but not the end of the next one
+        parser = factory.createNonBlockingByteArrayParser();
+        feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        feeder.feedInput(data, 0, "a = { x y } b = { c = { d".length());
+        assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+        assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+        parser.skipChildren();
+        assertEquals(JsonToken.END_ARRAY, parser.currentToken());
+        assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals("b", parser.currentName());
+        assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+        assertThrows(JsonParseException.class, parser::skipChildren);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "arrays", "duplicates", "lists", "noroot", "objectinarray", "operators", "scopes", "values", "whitespace", "history" })
+    public void skipChildrenStructurally(String sample) throws Exception {
+        JsonFactory factory = new Hoi4DbFactory();
+        URL url = getClass().getResource("/samples/" + sample + ".txt");
+        byte[] data = Files.readAllBytes(new File(url.toURI()).toPath());
+        for (int depth = 1; depth <= 3; depth++) {
+            List<String> expected = skippingEvents(factory.createParser(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)), depth, false);
+            assertEquals(expected, skippingEvents(factory.createParser(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)), depth, true), "chars, depth " + depth);
+            assertEquals(expected, skippingEvents(factory.createParser(data), depth, true), "bytes, depth " + depth);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "arrays", "duplicates", "lists", "noroot", "objectinarray", "operators", "scopes", "values", "whitespace", "history" })
+    public void recomputeLocationWithoutTracking(String sample) throws Exception {
+        Hoi4DbFactory tracking = new Hoi4DbFactory();
+        Hoi4DbFactory notTracking = new Hoi4DbFactory().disable(Hoi4DbParser.Feature.TRACK_LOCATION);
+        byte[] data = Files.readAllBytes(new File(getClass().getResource("/samples/" + sample + ".txt").toURI()).toPath());
+        String text = new String(data, StandardCharsets.UTF_8);
+
+        List<String> expected = locations(tracking.createParser(data));
+        assertEquals(expected, locations(notTracking.createParser(data)), "bytes");
+        assertEquals(locations(tracking.createParser(text)), locations(notTracking.createParser(text)), "chars");
+
+        // rows and columns of the error
+        byte[] broken = (text + "\nbroken = {\n\tx ; 1\n}\n").getBytes(StandardCharsets.UTF_8);
+        JsonLocation expectedError = assertThrows(JsonParseException.class, () -> events(tracking.createParser(broken))).getLocation();
+        JsonLocation error = assertThrows(JsonParseException.class, () -> events(notTracking.createParser(broken))).getLocation();
+        assertEquals(text.split("\n", -1).length + 2, error.getLineNr());
+        assertEquals(expectedError.getLineNr(), error.getLineNr());
+        assertEquals(expectedError.getColumnNr(), error.getColumnNr());
+    }
+
+    @Test
+    public void skipCommentsAndScopesInBytesLikeInChars() throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        String body = "# a long comment with { braces } and \"quotes\" that doesn't end too early\r\n"
+                + "a = {\n\t\t\t\t\t\t\t\t\t\t\tb = 1 # comment\n"
+                + "\t\t\t\t\t\t\t\t\tc = \"a \\\" { value } # not a comment\"\n"
+                + "                    d = { e = { f = \"}\" } }\n"
+                + "}\n"
+                + "g = { # } comment\n\t\t\t\t\t\t\t\t\t\th = yes }\n";
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        assertEquals(events(factory.createParser(new StringReader(body))), events(factory.createParser(data)));
+        assertEquals(locations(factory.createParser(new StringReader(body))), locations(factory.createParser(data)));
+        for (int depth = 1; depth <= 2; depth++) {
+            assertEquals(skippingEvents(factory.createParser(new StringReader(body)), depth, true),
+                    skippingEvents(factory.createParser(data), depth, true), "depth " + depth);
+        }
+    }
+
+    @Test
+    public void detectWindows1252() throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        String body = "a = { name = \"Bißmarck\" name = \"Sø – «x»\" }\n";
+        Charset cp1252 = Charset.forName("windows-1252");
+        List<String> expected = values(factory.createParser(body));
+
+        Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) factory.createParser(body.getBytes(cp1252));
+        assertEquals(cp1252, parser.getCharset());
+        assertEquals(expected, values(parser));
+        parser = (Hoi4DbUTF8StreamParser) factory.createParser(new ByteArrayInputStream(body.getBytes(cp1252)));
+        assertEquals(expected, values(parser));
+        assertEquals(cp1252, parser.getCharset());
+
+        parser = (Hoi4DbUTF8StreamParser) factory.createParser(body.getBytes(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, parser.getCharset());
+        assertEquals(expected, values(parser));
+        parser = (Hoi4DbUTF8StreamParser) factory.createParser(("\uFEFF" + body).getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, values(parser));
+
+        Hoi4DbFactory utf8 = new Hoi4DbFactory().disable(Hoi4DbParser.Feature.DETECT_ENCODING);
+        parser = (Hoi4DbUTF8StreamParser) utf8.createParser(body.getBytes(cp1252));
+        assertEquals(StandardCharsets.UTF_8, parser.getCharset());
+        assertEquals("Bi\uFFFDmarck", values(parser).get(0));
+
+        // Latin-1 "ï" isn't a broken BOM and BOM decoded as Latin-1 is skipped
+        assertEquals(Collections.singletonList("ïx"), values(factory.createParser("a = \"ïx\"")));
+        assertEquals(Collections.singletonList("x"), values(factory.createParser("\u00EF\u00BB\u00BFa = \"x\"")));
+    }
+
+    @Test
+    public void readFilteredPaths() throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.setNodeFactory(new Hoi4DbNodeFactory());
+        Hoi4DbPathFilter filter = Hoi4DbPathFilter.compile("if.limit", "if.create_equipment_variant",
+                "/[0-9]{4}\\.\\d+\\.\\d+/.if.create_equipment_variant", "capital");
+        URL url = getClass().getResource("/samples/history.txt");
+
+        ObjectNode expected = (ObjectNode) mapper.readTree(url);
+        expected.retain("if", "capital", "1939.1.1");
+        for (JsonNode o : expected.get("if")) {
+            ((ObjectNode) o).remove("set_naval_oob");
+        }
+        ((ObjectNode) expected.get("1939.1.1")).retain("if");
+        ((ObjectNode) expected.get("1939.1.1").get("if")).retain("create_equipment_variant");
+
+        Hoi4DbParser parser = (Hoi4DbParser) factory.createParser(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8));
+        parser.setFilter(filter);
+        assertEquals(expected, mapper.readTree(parser));
+        parser.close();
+        try (JsonParser p = factory.createParser(new File(url.toURI()).toPath(), filter)) {
+            assertEquals(expected, mapper.readTree(p));
+        }
+    }
+
+    @Test
+    public void pooledReadBuffers() throws Exception {
+        Hoi4DbBufferPool pool = new Hoi4DbBufferPool(128 * 1024, 2);
+        Hoi4DbFactory factory = new Hoi4DbFactory().setBufferPool(pool);
+        Hoi4DbFactory notPooled = new Hoi4DbFactory().setBufferPool(null);
+        URL url = getClass().getResource("/samples/history.txt");
+
+        List<String> expected = events(notPooled.createParser(url.openStream()));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(expected, events(factory.createParser(url.openStream())));
+            assertEquals(expected, events(factory.createParser(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))));
+        }
+        // one byte[] and one char[] buffer allocated, then reused
+        assertEquals(2L, pool.getMissCount());
+        assertEquals(2L, pool.getHitCount());
+
+        assertThrows(IllegalArgumentException.class, () -> new Hoi4DbBufferPool(8000, 2));
+    }
+
+    @Test
+    public void reusePooledParsers() throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        Hoi4DbParser first = null;
+        for (String sample : new String[] { "scopes", "history", "duplicates", "values" }) {
+            URL url = getClass().getResource("/samples/" + sample + ".txt");
+            Path path = new File(url.toURI()).toPath();
+            List<String> expected = events(factory.createParser(path));
+
+            Hoi4DbParser parser = factory.parserFor(path);
+            if (first == null) {
+                first = parser;
+            }
+            // closed parser is reused
+            assertSame(first, parser);
+            assertEquals(expected, events(parser));
+            Hoi4DbParser byteParser = factory.parserFor(url.openStream());
+            assertSame(first, byteParser);
+            assertEquals(expected, events(byteParser));
+            assertEquals(expected, events(factory.parserFor(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))));
+        }
+
+        // reset doesn't need closing and keeps symbol table
+        Hoi4DbUTF8StreamParser parser = (Hoi4DbUTF8StreamParser) factory.createParser("a = { b = 1 }".getBytes(StandardCharsets.UTF_8));
+        parser.nextToken();
+        parser.nextToken();
+        String a = parser.getCurrentName();
+        parser.reset(ByteBuffer.wrap("a = 2".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+        assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+        assertSame(a, parser.getCurrentName());
+        assertEquals(JsonToken.VALUE_NUMBER_INT, parser.nextToken());
+        assertEquals(2, parser.getIntValue());
+        assertEquals(1, parser.getTokenLocation().getLineNr());
+        parser.close();
+    }
+
+    @Test
+    public void deduplicatedValues() throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory().setValueDeduplication(32);
+        String longValue = "\"a value longer than thirty two characters\"";
+        String input = "a = ship_hull_cruiser_1\nb = { ship_hull_cruiser_1 GER }\nc = " + longValue + "\n";
+
+        List<String> first = values(factory.createParser(input.getBytes(StandardCharsets.UTF_8)));
+        List<String> second = values(factory.createParser(input));
+        assertEquals(first, second);
+        // also across parsers
+        assertSame(first.get(0), first.get(1));
+        assertSame(first.get(0), second.get(0));
+        assertSame(first.get(2), second.get(2));
+        assertNotSame(first.get(3), second.get(3));
+
+        Hoi4DbSymbolTable values = factory.getValueTable();
+        assertEquals(2, values.size());
+        assertEquals(2L, values.getMissCount());
+        assertEquals(4L, values.getHitCount());
+        assertTrue(values.getRetainedBytes() > "ship_hull_cruiser_1GER".length());
+        assertNull(new Hoi4DbFactory().getValueTable());
+
+        // pooled parser keeps its value table when reused, until deduplication changes
+        byte[] data = input.getBytes(StandardCharsets.UTF_8);
+        List<String> pooled = values(factory.parserFor(new ByteArrayInputStream(data)));
+        assertSame(first.get(0), pooled.get(0));
+        assertSame(first.get(0), values(factory.parserFor(new ByteArrayInputStream(data))).get(0));
+        assertEquals(4L + 2 * 3L, values.getHitCount());
+        factory.setValueDeduplication(0);
+        assertNotSame(first.get(0), values(factory.parserFor(new ByteArrayInputStream(data))).get(0));
+    }
+
+    @Test
+    public void canonicalFieldNames() throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        List<String> first = fieldNames(factory.createParser(getClass().getResourceAsStream("/samples/scopes.txt")));
+        assertEquals(0L, factory.getSymbolTable().getHitCount() + factory.getSymbolTable().getMissCount() - first.size());
+        List<String> second = fieldNames(factory.createParser(new InputStreamReader(getClass().getResourceAsStream("/samples/scopes.txt"), StandardCharsets.UTF_8)));
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            // names found by first parser are reused by second one
+            assertSame(first.get(i), second.get(i));
+        }
+        assertEquals(factory.getSymbolTable().size(), factory.getSymbolTable().getMissCount());
+        assertTrue(factory.getSymbolTable().getHitRatio() >= 0.5d);
+    }
+
+    @Test
+    public void mergeFieldNamesOfConcurrentParsers() throws Exception {
+        Hoi4DbFactory factory = new Hoi4DbFactory();
+        // pooled parser created before other parsers find any names
+        Hoi4DbParser pooled = factory.parserFor(new ByteArrayInputStream(new byte[0]));
+        pooled.close();
+
+        // both parsers are created before any of them is closed, so "common" is found twice
+        JsonParser p1 = factory.createParser("common = 1 first = 2");
+        JsonParser p2 = factory.createParser("common = 1 second = 2".getBytes(StandardCharsets.UTF_8));
+        List<String> names1 = fieldNames(p1);
+        List<String> names2 = fieldNames(p2);
+        assertNotSame(names1.get(0), names2.get(0));
+        // names of both parsers are kept - the first merged instance wins
+        assertEquals(3, factory.getSymbolTable().size());
+
+        List<String> names = fieldNames(factory.createParser("first = 1 second = 2 common = 3"));
+        assertSame(names1.get(1), names.get(0));
+        assertSame(names2.get(1), names.get(1));
+        assertSame(names1.get(0), names.get(2));
+
+        // reused parser sees names added after it was created
+        Hoi4DbParser reused = factory.parserFor(new ByteArrayInputStream("second = 1".getBytes(StandardCharsets.UTF_8)));
+        assertSame(pooled, reused);
+        assertSame(names2.get(1), fieldNames(reused).get(0));
+    }
+
     @Test
     @Ignore
     public void hoiToJson() throws Exception {
@@ -125,6 +570,29 @@ public class ExtractTest {
      * @param parser
      * @throws IOException
      */
+    private List<String> values(JsonParser parser) throws IOException {
+        List<String> values = new LinkedList<>();
+        while (parser.nextToken() != null) {
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                values.add(parser.getText());
+            }
+        }
+        parser.close();
+        return values;
+    }
+
+    private List<String> locations(JsonParser parser) throws IOException {
+        List<String> locations = new LinkedList<>();
+        while (parser.nextToken() != null) {
+            // row and column of the token may be taken after looking ahead, so only its offset is checked
+            JsonLocation c = parser.getCurrentLocation();
+            locations.add(parser.currentToken() + ": " + parser.getTokenLocation().getCharOffset() + ", "
+                    + c.getLineNr() + ":" + c.getColumnNr() + "/" + c.getCharOffset());
+        }
+        parser.close();
+        return locations;
+    }
+
     private void prettyPrint(JsonParser parser) throws IOException {
         int ind = 0;
         while (parser.nextToken() != null) {
@@ -163,6 +631,68 @@ public class ExtractTest {
         }
     }
 
+    /**
+     * Collects all events with associated names and values
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    private List<String> events(JsonParser parser) throws IOException {
+        List<String> events = new LinkedList<>();
+        while (parser.nextToken() != null) {
+            events.add(parser.currentToken() + ": " + parser.currentName() + " = " + parser.getCurrentValue());
+            String text = parser.getText();
+            if (text != null && parser.currentToken().isScalarValue()) {
+                // text characters point to the same value without creating a String
+                assertEquals(text, new String(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+            }
+        }
+        parser.close();
+        return events;
+    }
+
+    /**
+     * Collects events skipping all scopes starting at given depth - using {@link JsonParser#skipChildren()} or
+     * by reading all the tokens.
+     */
+    private List<String> skippingEvents(JsonParser parser, int skipDepth, boolean fast) throws IOException {
+        List<String> events = new LinkedList<>();
+        int depth = 0;
+        JsonToken t;
+        while ((t = parser.nextToken()) != null) {
+            if (t.isStructStart() && ++depth == skipDepth) {
+                if (fast) {
+                    parser.skipChildren();
+                } else {
+                    int open = 1;
+                    while (open > 0) {
+                        t = parser.nextToken();
+                        open += t.isStructStart() ? 1 : t.isStructEnd() ? -1 : 0;
+                    }
+                }
+            }
+            t = parser.currentToken();
+            if (t.isStructEnd()) {
+                depth--;
+            }
+            events.add(t + ": " + parser.currentName() + " = " + parser.getCurrentValue());
+        }
+        parser.close();
+        return events;
+    }
+
+    private List<String> fieldNames(JsonParser parser) throws IOException {
+        List<String> names = new LinkedList<>();
+        JsonToken t;
+        while ((t = parser.nextToken()) != null) {
+            if (t == JsonToken.FIELD_NAME) {
+                names.add(parser.currentName());
+            }
+        }
+        parser.close();
+        return names;
+    }
+
     private void indent(int ind) {
         for (int i = 0; i < ind; i++) {
             System.out.print(" ");
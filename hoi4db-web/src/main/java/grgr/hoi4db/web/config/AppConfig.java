@@ -19,9 +19,11 @@
 package grgr.hoi4db.web.config;
 
 import java.io.File;
+import java.nio.file.Paths;
 import javax.annotation.PostConstruct;
 
 import grgr.hoi4db.dao.NavalData;
+import grgr.hoi4db.dao.Utils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -34,6 +36,10 @@ public class AppConfig {
     @Value("${steam.dir}")
     private String steamDirName;
 
+    // where parsed game files are cached - defaults to ~/.cache/hoi4db
+    @Value("${cache.dir:}")
+    private String cacheDirName;
+
     private File steamDir;
 
     @PostConstruct
@@ -42,6 +48,11 @@ public class AppConfig {
         if (!steamDir.isDirectory()) {
             throw new IllegalArgumentException("Can't locate Hearts of Iron IV directory");
         }
+        if (cacheDirName.isEmpty()) {
+            Utils.useTokenCache(Paths.get(System.getProperty("user.home"), ".cache", "hoi4db"));
+        } else {
+            Utils.useTokenCache(Paths.get(cacheDirName));
+        }
     }
 
     @Bean